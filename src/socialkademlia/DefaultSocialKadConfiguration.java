@@ -0,0 +1,96 @@
+package socialkademlia;
+
+import kademlia.DefaultConfiguration;
+import kademlia.KadConfiguration;
+
+/**
+ * A set of SocialKademlia configuration parameters. Default values are
+ * supplied and can be changed by the application as necessary.
+ *
+ * @author Joshua Kissoon
+ * @since 20140612
+ */
+public class DefaultSocialKadConfiguration extends DefaultConfiguration implements SocialKadConfiguration
+{
+
+    private final static long CONTENT_CACHE_SIZE = 16 * 1024 * 1024;    // in bytes
+    private final static boolean USE_SEGMENT_STORAGE = false;
+    private final static boolean USE_BINARY_MESSAGES = false;
+    private final static boolean USE_METADATA_JOURNAL = true;
+    private final static boolean LAZY_INDEX_RECOVERY = false;
+    private final static boolean SYNC_WRITES = true;
+    private final static boolean SYNC_CONTENT_FILES = false;
+    private final static int MAX_HEDGED_REQUESTS = 0;
+    private final static double HEDGE_PERCENTILE = 0.95;
+
+    @Override
+    public long contentCacheSize()
+    {
+        return CONTENT_CACHE_SIZE;
+    }
+
+    @Override
+    public boolean useSegmentStorage()
+    {
+        return USE_SEGMENT_STORAGE;
+    }
+
+    @Override
+    public boolean useBinaryMessages()
+    {
+        return USE_BINARY_MESSAGES;
+    }
+
+    @Override
+    public boolean useMetadataJournal()
+    {
+        return USE_METADATA_JOURNAL;
+    }
+
+    @Override
+    public boolean lazyIndexRecovery()
+    {
+        return LAZY_INDEX_RECOVERY;
+    }
+
+    @Override
+    public boolean syncWrites()
+    {
+        return SYNC_WRITES;
+    }
+
+    @Override
+    public boolean syncContentFiles()
+    {
+        return SYNC_CONTENT_FILES;
+    }
+
+    @Override
+    public int maxHedgedRequests()
+    {
+        return MAX_HEDGED_REQUESTS;
+    }
+
+    @Override
+    public double hedgePercentile()
+    {
+        return HEDGE_PERCENTILE;
+    }
+
+    /**
+     * Get the SocialKademlia settings from a configuration.
+     *
+     * @param config The configuration in use
+     *
+     * @return The configuration itself if it is a SocialKadConfiguration, otherwise the default SocialKademlia settings
+     */
+    public static SocialKadConfiguration socialSettings(KadConfiguration config)
+    {
+        if (config instanceof SocialKadConfiguration)
+        {
+            return (SocialKadConfiguration) config;
+        }
+
+        return new DefaultSocialKadConfiguration();
+    }
+}
@@ -1,17 +1,22 @@
 package socialkademlia;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Timer;
 import java.util.TimerTask;
-import kademlia.DefaultConfiguration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import kademlia.dht.GetParameter;
 import kademlia.KadConfiguration;
 import kademlia.KadServer;
@@ -29,6 +34,7 @@ import socialkademlia.message.MessageFactory;
 import kademlia.node.Node;
 import kademlia.node.KademliaId;
 import socialkademlia.operation.ConnectOperation;
+import socialkademlia.operation.ContentLookupCoalescer;
 import socialkademlia.operation.ContentLookupOperation;
 import socialkademlia.operation.ContentLookupOperationFUC;
 import kademlia.operation.Operation;
@@ -36,11 +42,21 @@ import socialkademlia.operation.KadRefreshOperation;
 import socialkademlia.operation.StoreOperation;
 import socialkademlia.routing.SocialKademliaRoutingTable;
 import socialkademlia.routing.JSocialKademliaRoutingTable;
-import kademlia.util.serializer.JsonSerializer;
+import socialkademlia.util.serializer.Serializers;
 import socialkademlia.dht.SocialKademliaDHT;
 import socialkademlia.dht.SocialKademliaStorageEntry;
+import socialkademlia.dht.SocialKademliaStorageEntryMetadata;
 import socialkademlia.util.serializer.JsonSocialKadRoutingTableSerializer;
 import socialkademlia.util.serializer.JsonSocialKademliaDHTSerializer;
+import socialkademlia.util.serializer.BinarySocialKadRoutingTableSerializer;
+import socialkademlia.util.serializer.BinarySocialKademliaDHTSerializer;
+import socialkademlia.util.serializer.SnapshotFormat;
+import socialkademlia.util.compression.CompressionDictionary;
+import socialkademlia.util.compression.CompressionSettings;
+import socialkademlia.util.compression.DictionaryContent;
+import socialkademlia.util.compression.DictionaryDeflateCodec;
+import socialkademlia.util.compression.DictionaryTrainer;
+import socialkademlia.util.io.AtomicFiles;
 
 /**
  * The main Kademlia Node on the network, this node manages everything for this local system.
@@ -55,6 +71,10 @@ import socialkademlia.util.serializer.JsonSocialKademliaDHTSerializer;
 public class JSocialKademliaNode implements SocialKademliaNode
 {
 
+    /* How many entries are sampled to train a compression dictionary */
+    private static final int MIN_DICTIONARY_SAMPLES = 10;
+    private static final int MAX_DICTIONARY_SAMPLES = 200;
+
     /* Kademlia Attributes */
     private final String ownerId;
 
@@ -76,9 +96,26 @@ public class JSocialKademliaNode implements SocialKademliaNode
     /* Statistics */
     private final transient SocialKadStatistician statistician;
 
+    /* Threads used to finish off asynchronous operations, i.e. decompressing content and storing it locally */
+    private final transient ExecutorService asyncExecutor;
+
+    /* Concurrent lookups for the same content share one lookup on the network */
+    private final transient ContentLookupCoalescer contentLookups;
+
+    /* The codecs and dictionaries this node compresses content with */
+    private final transient CompressionSettings compression;
+
     
     {
         statistician = new Statistician();
+        contentLookups = new ContentLookupCoalescer(statistician);
+        compression = new CompressionSettings();
+        asyncExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), (Runnable r) ->
+        {
+            Thread t = new Thread(r, "SocialKademlia-Async");
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     /**
@@ -106,6 +143,7 @@ public class JSocialKademliaNode implements SocialKademliaNode
         this.dht = dht;
         this.config = config;
         this.routingTable = routingTable;
+        this.dht.setStatistician(this.statistician);
         this.messageFactory = new MessageFactory(this, this.dht, this.config);
         this.server = new KadServer(udpPort, this.messageFactory, this.localNode, this.config, this.statistician);
         this.startRefreshOperation();
@@ -175,7 +213,7 @@ public class JSocialKademliaNode implements SocialKademliaNode
                 ownerId,
                 new Node(defaultId, InetAddress.getLocalHost(), udpPort),
                 udpPort,
-                new DefaultConfiguration()
+                new DefaultSocialKadConfiguration()
         );
     }
 
@@ -191,7 +229,7 @@ public class JSocialKademliaNode implements SocialKademliaNode
      */
     public static JSocialKademliaNode loadFromFile(String ownerId) throws FileNotFoundException, IOException, ClassNotFoundException
     {
-        return JSocialKademliaNode.loadFromFile(ownerId, new DefaultConfiguration());
+        return JSocialKademliaNode.loadFromFile(ownerId, new DefaultSocialKadConfiguration());
     }
 
     /**
@@ -213,26 +251,53 @@ public class JSocialKademliaNode implements SocialKademliaNode
          * @section Read Basic Kad data
          */
         din = new DataInputStream(new FileInputStream(getStateStorageFolderName(ownerId, iconfig) + File.separator + "kad.kns"));
-        JSocialKademliaNode ikad = new JsonSerializer<JSocialKademliaNode>().read(din);
+        JSocialKademliaNode ikad = Serializers.<JSocialKademliaNode>json().read(din);
 
         /**
-         * @section Read the routing table
+         * @section Read the node state
          */
-        din = new DataInputStream(new FileInputStream(getStateStorageFolderName(ownerId, iconfig) + File.separator + "routingtable.kns"));
-        SocialKademliaRoutingTable irtbl = new JsonSocialKadRoutingTableSerializer(iconfig).read(din);
+        din = new DataInputStream(new FileInputStream(getStateStorageFolderName(ownerId, iconfig) + File.separator + "node.kns"));
+        Node inode = Serializers.<Node>json().read(din);
 
         /**
-         * @section Read the node state
+         * @section Read the routing table
+         * It's a binary snapshot, or JSON if it was saved by an older version
          */
-        din = new DataInputStream(new FileInputStream(getStateStorageFolderName(ownerId, iconfig) + File.separator + "node.kns"));
-        Node inode = new JsonSerializer<Node>().read(din);
+        din = new DataInputStream(new BufferedInputStream(new FileInputStream(getStateStorageFolderName(ownerId, iconfig) + File.separator + "routingtable.kns")));
+        SocialKademliaRoutingTable irtbl;
+        if (SnapshotFormat.isSnapshot(din, BinarySocialKadRoutingTableSerializer.MAGIC))
+        {
+            irtbl = new BinarySocialKadRoutingTableSerializer(inode, iconfig).read(din);
+        }
+        else
+        {
+            irtbl = new JsonSocialKadRoutingTableSerializer(iconfig).read(din);
+        }
 
         /**
          * @section Read the DHT
+         * It's a binary snapshot, or JSON if it was saved by an older version;
+         * there's none if the DHT journals it's index, it then recovers the index by itself
          */
-        din = new DataInputStream(new FileInputStream(getStateStorageFolderName(ownerId, iconfig) + File.separator + "dht.kns"));
-        SocialKademliaDHT idht = new JsonSocialKademliaDHTSerializer().read(din);
-        idht.setConfiguration(iconfig);
+        File dhtFile = new File(getStateStorageFolderName(ownerId, iconfig) + File.separator + "dht.kns");
+        SocialKademliaDHT idht;
+        if (!dhtFile.exists())
+        {
+            idht = new JSocialKademliaDHT(ownerId, iconfig);
+        }
+        else
+        {
+            din = new DataInputStream(new BufferedInputStream(new FileInputStream(dhtFile)));
+            if (SnapshotFormat.isSnapshot(din, BinarySocialKademliaDHTSerializer.MAGIC))
+            {
+                idht = new BinarySocialKademliaDHTSerializer().read(din);
+            }
+            else
+            {
+                idht = new JsonSocialKademliaDHTSerializer().read(din);
+            }
+            idht.setConfiguration(iconfig);
+        }
 
         return new JSocialKademliaNode(ownerId, inode, ikad.getPort(), idht, irtbl, iconfig);
     }
@@ -329,6 +394,39 @@ public class JSocialKademliaNode implements SocialKademliaNode
         return sop.numNodesStoredAt();
     }
 
+    /**
+     * Stores the specified value under the given key without blocking the calling thread.
+     *
+     * @param content The content to put onto the JSocialKademliaDHT
+     *
+     * @return A future completed with how many nodes the content was stored on
+     */
+    @Override
+    public CompletableFuture<Integer> putAsync(KadContent content)
+    {
+        return this.putAsync(new JSocialKademliaStorageEntry(content));
+    }
+
+    /**
+     * Stores the specified value under the given key without blocking the calling thread.
+     *
+     * @param entry The JSocialKademliaStorageEntry with the content to put onto the JSocialKademliaDHT
+     *
+     * @return A future completed with how many nodes the content was stored on
+     */
+    public CompletableFuture<Integer> putAsync(JSocialKademliaStorageEntry entry)
+    {
+        try
+        {
+            StoreOperation sop = new StoreOperation(this.server, this, this.compressStorageEntry(entry), this.dht, this.config);
+            return sop.executeAsync(this.asyncExecutor).thenApply(StoreOperation::numNodesStoredAt);
+        }
+        catch (IOException ex)
+        {
+            return failedFuture(ex);
+        }
+    }
+
     /**
      * Put the data on the network and also cache a copy locally
      *
@@ -379,13 +477,22 @@ public class JSocialKademliaNode implements SocialKademliaNode
     }
 
     /**
-     * Compress the storage entry
+     * Compress the storage entry, if it's worth compressing
      */
     private JSocialKademliaStorageEntry compressStorageEntry(final JSocialKademliaStorageEntry entry)
     {
+        if (entry.isCompressed())
+        {
+            return entry;
+        }
+
         try
         {
-            return StorageEntryCompressor.compress(entry);
+            long startTime = System.nanoTime();
+            int originalSize = entry.getContent().length;
+            StorageEntryCompressor.compress(entry, this.compression);
+            this.statistician.addCompression(originalSize, entry.getContent().length, System.nanoTime() - startTime, entry.isCompressed());
+            return entry;
         }
         catch (IOException ex)
         {
@@ -400,9 +507,17 @@ public class JSocialKademliaNode implements SocialKademliaNode
      */
     private JSocialKademliaStorageEntry decompressStorageEntry(final JSocialKademliaStorageEntry entry)
     {
+        if (!entry.isCompressed())
+        {
+            return entry;
+        }
+
         try
         {
-            return StorageEntryCompressor.decompress(entry);
+            long startTime = System.nanoTime();
+            StorageEntryCompressor.decompress(entry, this.compression);
+            this.statistician.addDecompression(System.nanoTime() - startTime);
+            return entry;
         }
         catch (IOException ex)
         {
@@ -412,6 +527,157 @@ public class JSocialKademliaNode implements SocialKademliaNode
         return entry;
     }
 
+    /**
+     * Train a compression dictionary for a type of content from the content of that type stored locally,
+     * use it to compress content of that type from now on, and put it onto the DHT so other nodes can decompress the content.
+     *
+     * @param type The type of content
+     *
+     * @return The dictionary, or null if there's not enough content of the type to train one
+     *
+     * @throws java.io.IOException
+     */
+    public CompressionDictionary trainCompressionDictionary(String type) throws IOException
+    {
+        List<byte[]> samples = new ArrayList<>();
+        for (SocialKademliaStorageEntryMetadata md : this.dht.iterateStorageEntries())
+        {
+            if (samples.size() == MAX_DICTIONARY_SAMPLES)
+            {
+                break;
+            }
+            if (!type.equals(md.getType()))
+            {
+                continue;
+            }
+
+            try
+            {
+                samples.add(this.resolveAndDecompress(this.dht.get(md)).getContent());
+            }
+            catch (NoSuchElementException ex)
+            {
+                /* The content was removed since we got the list, skip it */
+            }
+        }
+
+        if (samples.size() < MIN_DICTIONARY_SAMPLES)
+        {
+            return null;
+        }
+
+        byte[] data = DictionaryTrainer.train(samples, DictionaryTrainer.MAX_DICTIONARY_SIZE);
+        if (data.length == 0)
+        {
+            return null;
+        }
+
+        CompressionDictionary dictionary = new CompressionDictionary(type, data);
+        this.compression.getDictionaries().register(dictionary);
+        this.put(new DictionaryContent(this.ownerId, dictionary));
+        this.compression.setCodecForType(type, new DictionaryDeflateCodec(dictionary));
+
+        return dictionary;
+    }
+
+    /**
+     * Decompress a storage entry, first looking up the dictionary it was compressed with on the DHT if we don't know it
+     */
+    private JSocialKademliaStorageEntry resolveAndDecompress(final JSocialKademliaStorageEntry entry)
+    {
+        KademliaId id = this.unknownCompressionDictionary(entry);
+        if (id != null)
+        {
+            try
+            {
+                this.addCompressionDictionary(id, this.get(new GetParameter(DictionaryContent.keyFor(id), DictionaryContent.TYPE)));
+            }
+            catch (IOException | ContentNotFoundException | NoSuchElementException ex)
+            {
+                System.err.println("Could not find compression dictionary " + id + ". Msg: " + ex.getMessage());
+            }
+        }
+
+        return this.decompressStorageEntry(entry);
+    }
+
+    /**
+     * Decompress a storage entry without blocking the calling thread,
+     * first looking up the dictionary it was compressed with on the DHT if we don't know it
+     */
+    private CompletableFuture<JSocialKademliaStorageEntry> resolveAndDecompressAsync(final JSocialKademliaStorageEntry entry)
+    {
+        final KademliaId id = this.unknownCompressionDictionary(entry);
+        if (id == null)
+        {
+            return CompletableFuture.completedFuture(this.decompressStorageEntry(entry));
+        }
+
+        return this.getAsync(new GetParameter(DictionaryContent.keyFor(id), DictionaryContent.TYPE)).handle((JSocialKademliaStorageEntry found, Throwable ex) ->
+        {
+            if (found != null)
+            {
+                this.addCompressionDictionary(id, found);
+            }
+            else
+            {
+                System.err.println("Could not find compression dictionary " + id + ". Msg: " + ex.getMessage());
+            }
+            return this.decompressStorageEntry(entry);
+        });
+    }
+
+    /**
+     * @return The id of the dictionary the entry was compressed with if we don't know the dictionary, otherwise null
+     */
+    private KademliaId unknownCompressionDictionary(final JSocialKademliaStorageEntry entry)
+    {
+        /* Dictionaries are never compressed with a dictionary, so looking one up never needs another */
+        if (entry.getCompressionCodec() != DictionaryDeflateCodec.ID || DictionaryContent.TYPE.equals(entry.getContentMetadata().getType()))
+        {
+            return null;
+        }
+
+        try
+        {
+            KademliaId id = DictionaryDeflateCodec.dictionaryId(entry.getContent());
+            return this.compression.getDictionaries().contains(id) ? null : id;
+        }
+        catch (IOException ex)
+        {
+            /* Decompressing the entry reports it */
+            return null;
+        }
+    }
+
+    /**
+     * Take in a dictionary found on the DHT, if it's the dictionary with the given id
+     *
+     * @param id    The id of the dictionary looked up
+     * @param found The decompressed entry found for the dictionary
+     */
+    private void addCompressionDictionary(KademliaId id, JSocialKademliaStorageEntry found)
+    {
+        try
+        {
+            CompressionDictionary dictionary = new DictionaryContent().fromSerializedForm(found.getContent()).toDictionary();
+
+            /* The id is the digest of the dictionary, so anyone can store a dictionary under the id's key but only the right one is taken */
+            if (dictionary.getId().equals(id))
+            {
+                this.compression.getDictionaries().register(dictionary);
+            }
+            else
+            {
+                System.err.println("Rejected compression dictionary found for " + id + " with id " + dictionary.getId());
+            }
+        }
+        catch (RuntimeException ex)
+        {
+            System.err.println("Invalid compression dictionary found for " + id + ". Msg: " + ex.getMessage());
+        }
+    }
+
     /**
      * Get some content cached locally on the JSocialKademliaDHT.
      *
@@ -423,7 +689,7 @@ public class JSocialKademliaNode implements SocialKademliaNode
      */
     public SocialKademliaStorageEntry getCachedContent(GetParameter param) throws NoSuchElementException, IOException
     {
-        return this.decompressStorageEntry(this.dht.get(param));
+        return this.resolveAndDecompress(this.dht.get(param));
     }
 
     /**
@@ -481,28 +747,37 @@ public class JSocialKademliaNode implements SocialKademliaNode
                 catch (UpToDateContentException ex)
                 {
                     /* well the version we have is the latest, lets just return that */
-                    return this.decompressStorageEntry(e);
+                    return this.resolveAndDecompress(e);
                 }
             }
             else if (e.getContentMetadata().isKNode())
             {
                 /* We're one of the k-nodes, lets just return the content */
-                return this.decompressStorageEntry(e);
+                return this.resolveAndDecompress(e);
             }
             else
             {
                 /* If it's not cached, we just return it since our node is one of the K-Closest */
-                return this.decompressStorageEntry(e);
+                return this.resolveAndDecompress(e);
             }
         }
 
-        /* Seems like it doesn't exist in our JSocialKademliaDHT, get it from other Nodes */
-        long startTime = System.nanoTime();
-        ContentLookupOperation clo = new ContentLookupOperation(server, this, param, this.config);
-        clo.execute();
-        long endTime = System.nanoTime();
-        this.statistician.addContentLookup(endTime - startTime, clo.routeLength(), clo.isContentFound());
-        return this.decompressStorageEntry(clo.getContentFound());
+        /**
+         * Seems like it doesn't exist in our JSocialKademliaDHT, get it from other Nodes;
+         * if we're already looking for it, we wait for that lookup instead.
+         */
+        JSocialKademliaStorageEntry found = this.contentLookups.lookup(param, () ->
+        {
+            long startTime = System.nanoTime();
+            ContentLookupOperation clo = new ContentLookupOperation(server, this, param, this.config);
+            clo.execute();
+            long endTime = System.nanoTime();
+            this.statistician.addContentLookup(endTime - startTime, clo.routeLength(), clo.isContentFound());
+            return clo.getContentFound();
+        });
+
+        /* The entry found is shared with anyone else waiting for the lookup, so we decompress our own copy */
+        return this.resolveAndDecompress(new JSocialKademliaStorageEntry(found));
     }
 
     /**
@@ -525,7 +800,7 @@ public class JSocialKademliaNode implements SocialKademliaNode
          *
          * @todo decide whether it's better to decompress twice or to copy the storageentry and use one copy for cache()
          */
-        return this.decompressStorageEntry(e);
+        return this.resolveAndDecompress(e);
     }
 
     /**
@@ -564,7 +839,150 @@ public class JSocialKademliaNode implements SocialKademliaNode
             /* Any exception here will be if we don't have the content... just ignore it */
         }
 
-        return this.decompressStorageEntry(latest);
+        return this.resolveAndDecompress(latest);
+    }
+
+    /**
+     * Get some content stored on the JSocialKademliaDHT without blocking the calling thread.
+     *
+     * The future fails with a ContentNotFoundException if the content could not be found.
+     *
+     * @param param The parameters used to search for the content
+     *
+     * @return A future completed with the content
+     */
+    @Override
+    public CompletableFuture<JSocialKademliaStorageEntry> getAsync(final GetParameter param)
+    {
+        if (this.dht.contains(param))
+        {
+            /* The content is on our JSocialKademliaDHT */
+            final JSocialKademliaStorageEntry e;
+            try
+            {
+                e = this.dht.get(param);
+            }
+            catch (IOException | NoSuchElementException ex)
+            {
+                return failedFuture(ex);
+            }
+
+            if (!e.getContentMetadata().isCached())
+            {
+                /* We're one of the k-nodes or the content is not cached, lets just return the content */
+                return this.resolveAndDecompressAsync(e);
+            }
+
+            /* If it's cached, we check for an updated version */
+            return this.getUpdatedAsync(new GetParameterFUC(e.getContentMetadata())).exceptionally((Throwable ex) ->
+            {
+                Throwable cause = (ex instanceof CompletionException) ? ex.getCause() : ex;
+                if (cause instanceof UpToDateContentException)
+                {
+                    /* well the version we have is the latest, lets just return that */
+                    return null;
+                }
+                throw new CompletionException(cause);
+            }).thenCompose((JSocialKademliaStorageEntry latest) -> (latest != null) ? CompletableFuture.completedFuture(latest) : this.resolveAndDecompressAsync(e));
+        }
+
+        /**
+         * Seems like it doesn't exist in our JSocialKademliaDHT, get it from other Nodes;
+         * if we're already looking for it, we share that lookup instead.
+         */
+        CompletableFuture<JSocialKademliaStorageEntry> found = this.contentLookups.lookupAsync(param, () ->
+        {
+            final long startTime = System.nanoTime();
+            ContentLookupOperation clo = new ContentLookupOperation(server, this, param, this.config);
+            try
+            {
+                return clo.executeAsync().thenApply((ContentLookupOperation op) ->
+                {
+                    long endTime = System.nanoTime();
+                    this.statistician.addContentLookup(endTime - startTime, op.routeLength(), op.isContentFound());
+                    try
+                    {
+                        return op.getContentFound();
+                    }
+                    catch (ContentNotFoundException ex)
+                    {
+                        throw new CompletionException(ex);
+                    }
+                });
+            }
+            catch (IOException ex)
+            {
+                return failedFuture(ex);
+            }
+        });
+
+        /* The entry found is shared with anyone else waiting for the lookup, so we decompress our own copy */
+        return found.thenComposeAsync((JSocialKademliaStorageEntry e) -> this.resolveAndDecompressAsync(new JSocialKademliaStorageEntry(e)), this.asyncExecutor);
+    }
+
+    /**
+     * Get some content stored on the JSocialKademliaDHT if there is a newer version than our current version,
+     * without blocking the calling thread.
+     *
+     * The future fails with an UpToDateContentException if our version is the latest.
+     *
+     * @param param The parameters used to search for the content
+     *
+     * @return A future completed with the content
+     */
+    public CompletableFuture<JSocialKademliaStorageEntry> getUpdatedAsync(final GetParameterFUC param)
+    {
+        /* We assume the owner always have the latest content, so no need to contact any other node for updated content */
+        if (param.getOwnerId().equals(this.getOwnerId()))
+        {
+            return failedFuture(new UpToDateContentException("You are the owner of this content, no need to check other nodes!!!"));
+        }
+
+        final long startTime = System.nanoTime();
+        ContentLookupOperationFUC clo = new ContentLookupOperationFUC(server, this, param, this.config);
+        try
+        {
+            return clo.executeAsync().thenApplyAsync((ContentLookupOperationFUC op) ->
+            {
+                long endTime = System.nanoTime();
+                this.statistician.addContentLookupFUC(endTime - startTime, op.routeLength(), op.newerContentExist(), op.isContentFound());
+
+                try
+                {
+                    JSocialKademliaStorageEntry latest = op.getContentFound();
+
+                    /* If we have this content locally, lets update it too */
+                    try
+                    {
+                        this.dht.update(latest);
+                    }
+                    catch (NoSuchElementException ex)
+                    {
+                        /* Any exception here will be if we don't have the content... just ignore it */
+                    }
+
+                    return latest;
+                }
+                catch (UpToDateContentException | IOException ex)
+                {
+                    throw new CompletionException(ex);
+                }
+            }, this.asyncExecutor).thenCompose(this::resolveAndDecompressAsync);
+        }
+        catch (IOException ex)
+        {
+            return failedFuture(ex);
+        }
+    }
+
+    /**
+     * @return A future that has already failed with the given exception
+     */
+    private static <T> CompletableFuture<T> failedFuture(Throwable ex)
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+        return future;
     }
 
     /**
@@ -611,49 +1029,64 @@ public class JSocialKademliaNode implements SocialKademliaNode
 
         this.stopRefreshOperation();
 
+        /* Stop taking on asynchronous work */
+        this.asyncExecutor.shutdown();
+
         /* Save this Kademlia instance's state if required */
         if (saveState)
         {
             /* Save the system state */
             this.saveKadState();
         }
+
+        this.dht.close();
     }
 
     /**
-     * Saves the node state to a text file
+     * Saves the node state to a text file.
+     * Every file is replaced atomically, so a save cut short leaves the files of the last save.
      *
      * @throws java.io.FileNotFoundException
      */
     @Override
     public void saveKadState() throws IOException
     {
-        DataOutputStream dout;
+        boolean sync = DefaultSocialKadConfiguration.socialSettings(this.config).syncWrites();
 
         /**
          * @section Store Basic Kad data
          */
-        dout = new DataOutputStream(new FileOutputStream(getStateStorageFolderName(this.ownerId, this.config) + File.separator + "kad.kns"));
-        new JsonSerializer<JSocialKademliaNode>().write(this, dout);
+        AtomicFiles.write(new File(getStateStorageFolderName(this.ownerId, this.config) + File.separator + "kad.kns"),
+                (DataOutputStream dout) -> Serializers.<JSocialKademliaNode>json().write(this, dout), sync);
 
         /**
          * @section Save the node state
          */
-        dout = new DataOutputStream(new FileOutputStream(getStateStorageFolderName(this.ownerId, this.config) + File.separator + "node.kns"));
-        new JsonSerializer<Node>().write(this.localNode, dout);
+        AtomicFiles.write(new File(getStateStorageFolderName(this.ownerId, this.config) + File.separator + "node.kns"),
+                (DataOutputStream dout) -> Serializers.<Node>json().write(this.localNode, dout), sync);
 
         /**
          * @section Save the routing table
          * We need to save the routing table separate from the node since the routing table will contain the node and the node will contain the routing table
          * This will cause a serialization recursion, and in turn a Stack Overflow
          */
-        dout = new DataOutputStream(new FileOutputStream(getStateStorageFolderName(this.ownerId, this.config) + File.separator + "routingtable.kns"));
-        new JsonSocialKadRoutingTableSerializer(this.config).write(this.getRoutingTable(), dout);
+        AtomicFiles.write(new File(getStateStorageFolderName(this.ownerId, this.config) + File.separator + "routingtable.kns"),
+                (DataOutputStream dout) -> new BinarySocialKadRoutingTableSerializer(this.localNode, this.config).write(this.getRoutingTable(), dout), sync);
 
         /**
          * @section Save the DHT
+         * If the DHT journals it's index, a checkpoint is all that's needed and the full snapshot is not written
          */
-        dout = new DataOutputStream(new FileOutputStream(getStateStorageFolderName(this.ownerId, this.config) + File.separator + "dht.kns"));
-        new JsonSocialKademliaDHTSerializer().write(this.dht, dout);
+        File dhtFile = new File(getStateStorageFolderName(this.ownerId, this.config) + File.separator + "dht.kns");
+        if (this.dht.checkpoint())
+        {
+            /* Don't leave an older snapshot around, the checkpoint replaces it */
+            dhtFile.delete();
+        }
+        else
+        {
+            AtomicFiles.write(dhtFile, (DataOutputStream dout) -> new BinarySocialKademliaDHTSerializer().write(this.dht, dout), sync);
+        }
 
     }
 
@@ -686,6 +1119,14 @@ public class JSocialKademliaNode implements SocialKademliaNode
         return this.statistician;
     }
 
+    /**
+     * @return The codecs and dictionaries this node compresses content with
+     */
+    public CompressionSettings getCompressionSettings()
+    {
+        return this.compression;
+    }
+
     /**
      * Creates a string containing all data about this Kademlia instance
      *
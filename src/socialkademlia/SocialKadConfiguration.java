@@ -0,0 +1,65 @@
+package socialkademlia;
+
+import kademlia.KadConfiguration;
+
+/**
+ * Extends the Kademlia configuration with settings specific to SocialKademlia.
+ *
+ * @author Joshua Kissoon
+ * @since 20140612
+ */
+public interface SocialKadConfiguration extends KadConfiguration
+{
+
+    /**
+     * @return The maximum size in bytes of the in-memory cache of content read from the local DHT storage; 0 disables the cache
+     */
+    public long contentCacheSize();
+
+    /**
+     * @return Whether the DHT content is appended to large segment files rather than stored in a file per entry
+     */
+    public boolean useSegmentStorage();
+
+    /**
+     * @return Whether the store and update lookup messages this node sends are in binary form rather than JSON.
+     *         Nodes that don't know the binary form drop such messages, so only turn this on once every node in the network knows it;
+     *         replies are always sent in the form of the message they reply to.
+     */
+    public boolean useBinaryMessages();
+
+    /**
+     * @return Whether changes to the index of stored content are journaled, so the index is recovered if the node crashes
+     */
+    public boolean useMetadataJournal();
+
+    /**
+     * @return Whether the index of stored content is recovered in the background when the node starts,
+     *         so the node serves straight away; content not indexed yet is looked up in the content store
+     */
+    public boolean lazyIndexRecovery();
+
+    /**
+     * @return Whether stored content and saved state are synced to disk before a write returns, so they survive a crash of the machine;
+     *         content stored a file per entry is only synced if syncContentFiles() is set as well
+     */
+    public boolean syncWrites();
+
+    /**
+     * @return Whether content stored a file per entry is synced to disk before a store returns.
+     *         Each store then waits for the entry's file and it's folder to be synced, which seldom share a sync with other stores;
+     *         the segment store shares syncs between stores, and is synced by syncWrites() alone.
+     */
+    public boolean syncContentFiles();
+
+    /**
+     * @return How many hedged requests a content lookup may send; a hedged request is sent to another node
+     *         when a node has not replied within hedgePercentile() of the round trip times seen. 0 turns hedging off.
+     */
+    public int maxHedgedRequests();
+
+    /**
+     * @return The percentile of round trip times after which a node that has not replied is hedged, between 0 and 1
+     */
+    public double hedgePercentile();
+}
@@ -32,4 +32,93 @@ public interface SocialKadStatistician extends KadStatistician
      * @return How many updated content were found using the GUP RPC
      */
     public int numFUCUpdatesFound();
+
+    /**
+     * Record a content lookup that waited for an identical lookup already in flight instead of going to the network.
+     */
+    public void addCoalescedContentLookup();
+
+    /**
+     * @return How many content lookups were coalesced into a lookup already in flight
+     */
+    public int numCoalescedContentLookups();
+
+    /**
+     * Record a hedged request sent by a content lookup to another node, since a node was slow to reply.
+     */
+    public void addHedgedRequest();
+
+    /**
+     * Record a hedged request that was replied to before the request it hedged.
+     */
+    public void addHedgeWin();
+
+    /**
+     * @return How many hedged requests content lookups sent
+     */
+    public int numHedgedRequests();
+
+    /**
+     * @return How many hedged requests were replied to before the requests they hedged
+     */
+    public int numHedgeWins();
+
+    /**
+     * Record a lookup of content in the DHT's in-memory content cache.
+     *
+     * @param isHit Whether the content was in the cache
+     */
+    public void addContentCacheLookup(boolean isHit);
+
+    /**
+     * @return How many content reads from the DHT were served from the in-memory content cache
+     */
+    public int numContentCacheHits();
+
+    /**
+     * @return How many content reads from the DHT had to go to the local storage
+     */
+    public int numContentCacheMisses();
+
+    /**
+     * Record an attempt to compress an entry's content.
+     *
+     * @param originalSize The size of the content before compression
+     * @param storedSize   The size of the content as stored, the same as originalSize if compression was skipped
+     * @param time         The time taken in nanoseconds, including deciding whether to compress
+     * @param isCompressed Whether the content was compressed or compression was skipped
+     */
+    public void addCompression(long originalSize, long storedSize, long time, boolean isCompressed);
+
+    /**
+     * Record the decompression of an entry's content.
+     *
+     * @param time The time taken in nanoseconds
+     */
+    public void addDecompression(long time);
+
+    /**
+     * @return How many entries were stored compressed
+     */
+    public int numCompressedEntries();
+
+    /**
+     * @return How many entries were stored uncompressed since compression wasn't worth it
+     */
+    public int numCompressionsSkipped();
+
+    /**
+     * @return How many bytes were saved by compression
+     */
+    public long compressionBytesSaved();
+
+    /**
+     * @return The total time spent compressing content and deciding whether to, in nanoseconds
+     */
+    public long totalCompressionTime();
+
+    /**
+     * @return The total time spent decompressing content in nanoseconds
+     */
+    public long totalDecompressionTime();
 }
@@ -2,6 +2,7 @@ package socialkademlia;
 
 import java.io.IOException;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
 import kademlia.KadConfiguration;
 import kademlia.KadServer;
 import kademlia.dht.GetParameter;
@@ -91,6 +92,15 @@ public interface SocialKademliaNode
      */
     public int put(KademliaStorageEntry entry) throws IOException;
 
+    /**
+     * Stores the specified value under the given key without blocking the calling thread.
+     *
+     * @param content The content to put onto the DHT
+     *
+     * @return A future completed with how many nodes the content was stored on
+     */
+    public CompletableFuture<Integer> putAsync(KadContent content);
+
     /**
      * Store a content on the local node's DHT
      *
@@ -112,6 +122,15 @@ public interface SocialKademliaNode
      */
     public KademliaStorageEntry get(GetParameter param) throws NoSuchElementException, IOException, ContentNotFoundException;
 
+    /**
+     * Get some content stored on the DHT without blocking the calling thread.
+     *
+     * @param param The parameters used to search for the content
+     *
+     * @return A future completed with the content, or failed with a ContentNotFoundException
+     */
+    public CompletableFuture<? extends KademliaStorageEntry> getAsync(GetParameter param);
+
     /**
      * Allow the user of the System to call refresh even out of the normal Kad refresh timing
      *
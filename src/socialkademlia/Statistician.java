@@ -24,9 +24,21 @@ public class Statistician implements SocialKadStatistician
     private int numContentLookups, numFailedContentLookups;
     private int numContentLookupsFUC;
     private int numFUCUpdatesFound;
+    private int numCoalescedContentLookups;
+
+    /* Hedged requests sent by content lookups, and how many were replied to first */
+    private int numHedgedRequests, numHedgeWins;
     private long totalContentLookupTime;
     private long totalRouteLength;
 
+    /* DHT content cache hits & misses */
+    private int numContentCacheHits, numContentCacheMisses;
+
+    /* Content compression; bytes saved vs time spent */
+    private int numCompressedEntries, numCompressionsSkipped;
+    private long compressionBytesSaved;
+    private long totalCompressionTime, totalDecompressionTime;
+
     
     {
         this.totalDataSent = 0;
@@ -36,6 +48,16 @@ public class Statistician implements SocialKadStatistician
         this.totalContentLookupTime = 0;
         this.totalRouteLength = 0;
         this.numFUCUpdatesFound = 0;
+        this.numCoalescedContentLookups = 0;
+        this.numHedgedRequests = 0;
+        this.numHedgeWins = 0;
+        this.numContentCacheHits = 0;
+        this.numContentCacheMisses = 0;
+        this.numCompressedEntries = 0;
+        this.numCompressionsSkipped = 0;
+        this.compressionBytesSaved = 0;
+        this.totalCompressionTime = 0;
+        this.totalDecompressionTime = 0;
     }
 
     @Override
@@ -136,6 +158,118 @@ public class Statistician implements SocialKadStatistician
         return this.numFUCUpdatesFound;
     }
 
+    @Override
+    public void addCoalescedContentLookup()
+    {
+        this.numCoalescedContentLookups++;
+    }
+
+    @Override
+    public int numCoalescedContentLookups()
+    {
+        return this.numCoalescedContentLookups;
+    }
+
+    @Override
+    public void addHedgedRequest()
+    {
+        this.numHedgedRequests++;
+    }
+
+    @Override
+    public void addHedgeWin()
+    {
+        this.numHedgeWins++;
+    }
+
+    @Override
+    public int numHedgedRequests()
+    {
+        return this.numHedgedRequests;
+    }
+
+    @Override
+    public int numHedgeWins()
+    {
+        return this.numHedgeWins;
+    }
+
+    @Override
+    public void addContentCacheLookup(boolean isHit)
+    {
+        if (isHit)
+        {
+            this.numContentCacheHits++;
+        }
+        else
+        {
+            this.numContentCacheMisses++;
+        }
+    }
+
+    @Override
+    public int numContentCacheHits()
+    {
+        return this.numContentCacheHits;
+    }
+
+    @Override
+    public int numContentCacheMisses()
+    {
+        return this.numContentCacheMisses;
+    }
+
+    @Override
+    public void addCompression(long originalSize, long storedSize, long time, boolean isCompressed)
+    {
+        if (isCompressed)
+        {
+            this.numCompressedEntries++;
+            this.compressionBytesSaved += originalSize - storedSize;
+        }
+        else
+        {
+            this.numCompressionsSkipped++;
+        }
+        this.totalCompressionTime += time;
+    }
+
+    @Override
+    public void addDecompression(long time)
+    {
+        this.totalDecompressionTime += time;
+    }
+
+    @Override
+    public int numCompressedEntries()
+    {
+        return this.numCompressedEntries;
+    }
+
+    @Override
+    public int numCompressionsSkipped()
+    {
+        return this.numCompressionsSkipped;
+    }
+
+    @Override
+    public long compressionBytesSaved()
+    {
+        return this.compressionBytesSaved;
+    }
+
+    @Override
+    public long totalCompressionTime()
+    {
+        return this.totalCompressionTime;
+    }
+
+    @Override
+    public long totalDecompressionTime()
+    {
+        return this.totalDecompressionTime;
+    }
+
     @Override
     public long totalContentLookupTime()
     {
@@ -193,6 +327,8 @@ public class Statistician implements SocialKadStatistician
         sb.append(this.numContentLookups());
         sb.append("(FUC: ");
         sb.append(this.numContentLookupsFUC());
+        sb.append(", Coalesced: ");
+        sb.append(this.numCoalescedContentLookups());
         sb.append(") ");
         sb.append("; ");
 
@@ -204,6 +340,32 @@ public class Statistician implements SocialKadStatistician
         sb.append(this.averageContentLookupRouteLength());
         sb.append("; ");
 
+        sb.append("Hedged Requests/Wins: ");
+        sb.append(this.numHedgedRequests());
+        sb.append("/");
+        sb.append(this.numHedgeWins());
+        sb.append("; ");
+
+        sb.append("Content Cache Hits/Misses: ");
+        sb.append(this.numContentCacheHits());
+        sb.append("/");
+        sb.append(this.numContentCacheMisses());
+        sb.append("; ");
+
+        sb.append("Compressed/Skipped Entries: ");
+        sb.append(this.numCompressedEntries());
+        sb.append("/");
+        sb.append(this.numCompressionsSkipped());
+        sb.append(", ");
+        sb.append(this.compressionBytesSaved());
+        sb.append(" bytes saved in ");
+        sb.append(this.totalCompressionTime() / 1000000L);
+        sb.append(" ms; ");
+
+        sb.append("Decompression Time: ");
+        sb.append(this.totalDecompressionTime() / 1000000L);
+        sb.append(" ms; ");
+
         sb.append("]");
 
         return sb.toString();
@@ -1,8 +1,12 @@
 package socialkademlia.dht;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import kademlia.dht.GetParameter;
 import kademlia.dht.KadContent;
 import kademlia.node.KademliaId;
+import socialkademlia.util.serializer.BinaryFormat;
 
 /**
  * A GET request can get content based on Key, Owner, Type, etc
@@ -13,6 +17,9 @@ import kademlia.node.KademliaId;
  *
  * This class will need the lastUpdatedTimestamp, since it is sent to request content of a newer version than the person has.
  *
+ * The parameters can be written in a binary form: key (20 bytes), last updated timestamp (varint), owner and type (strings);
+ * see BinaryFormat.
+ *
  * @author Joshua Kissoon
  * @since 20140419
  */
@@ -75,6 +82,40 @@ public class GetParameterFUC extends GetParameter
         return this.lastUpdatedTS;
     }
 
+    /**
+     * Write these parameters to the stream in binary form
+     *
+     * @param out
+     *
+     * @throws java.io.IOException
+     */
+    public void toStream(DataOutputStream out) throws IOException
+    {
+        BinaryFormat.writeKey(out, this.getKey());
+        BinaryFormat.writeVarLong(out, this.lastUpdatedTS);
+        BinaryFormat.writeString(out, this.getOwnerId());
+        BinaryFormat.writeString(out, this.getType());
+    }
+
+    /**
+     * Read parameters written in binary form by toStream
+     *
+     * @param in
+     *
+     * @return The parameters
+     *
+     * @throws java.io.IOException
+     */
+    public static GetParameterFUC fromStream(DataInputStream in) throws IOException
+    {
+        KademliaId key = BinaryFormat.readKey(in);
+        long updatedTs = BinaryFormat.readVarLong(in);
+        String owner = BinaryFormat.readString(in);
+        String type = BinaryFormat.readString(in);
+
+        return new GetParameterFUC(key, type, owner, updatedTs);
+    }
+
     @Override
     public String toString()
     {
@@ -1,14 +1,23 @@
 package socialkademlia.dht;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import kademlia.KadConfiguration;
 import kademlia.dht.GetParameter;
 import kademlia.dht.KadContent;
@@ -16,8 +25,16 @@ import kademlia.dht.KademliaStorageEntryMetadata;
 import kademlia.exceptions.ContentExistException;
 import kademlia.exceptions.ContentNotFoundException;
 import kademlia.node.KademliaId;
-import kademlia.util.serializer.JsonSerializer;
 import kademlia.util.serializer.KadSerializer;
+import socialkademlia.DefaultSocialKadConfiguration;
+import socialkademlia.SocialKadConfiguration;
+import socialkademlia.SocialKadStatistician;
+import socialkademlia.dht.storage.ContentStore;
+import socialkademlia.dht.storage.FileContentStore;
+import socialkademlia.dht.storage.MetadataJournal;
+import socialkademlia.dht.storage.SegmentContentStore;
+import socialkademlia.util.serializer.Serializers;
+import socialkademlia.util.serializer.StorageEntrySerializer;
 
 /**
  * The main Distributed Hash Table class that manages the entire JSocialKademliaDHT
@@ -31,8 +48,44 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
 {
 
     private transient StoredContentManager contentManager;
-    private transient KadSerializer<JSocialKademliaStorageEntry> serializer = null;
     private transient KadConfiguration config;
+    private transient StorageEntryCache entryCache;
+    private transient SocialKadStatistician statistician;
+    private transient ContentStore contentStore;
+    private transient MetadataJournal journal;
+    private transient AtomicBoolean checkpointScheduled;
+
+    /* Completes once the index has been recovered, when it's recovered in the background */
+    private transient volatile CompletableFuture<Void> recovery;
+
+    /* The hash codes of the entries changed while the index is recovered in the background; recovery leaves these entries alone */
+    private transient Set<Integer> changedDuringRecovery;
+
+    /* Stores and removes of content hold the lock of it's key, so index changes are journaled in the order they're made */
+    private static final int NUM_KEY_LOCKS = 64;
+    private transient Object[] keyLocks;
+
+    /* Checkpoints are written on a single background thread shared by all DHTs in this JVM */
+    private static final ExecutorService checkpointer;
+
+    /* Indexes are recovered in the background on threads shared by all DHTs in this JVM */
+    private static final ExecutorService recoverer;
+
+    static
+    {
+        checkpointer = Executors.newSingleThreadExecutor((Runnable r) ->
+        {
+            Thread t = new Thread(r, "SocialKademlia-Checkpointer");
+            t.setDaemon(true);
+            return t;
+        });
+        recoverer = Executors.newCachedThreadPool((Runnable r) ->
+        {
+            Thread t = new Thread(r, "SocialKademlia-IndexRecovery");
+            t.setDaemon(true);
+            return t;
+        });
+    }
 
     private final String ownerId;
 
@@ -41,6 +94,7 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
         this.ownerId = ownerId;
         this.config = config;
         this.initialize();
+        this.openJournal();
     }
 
     /**
@@ -50,6 +104,19 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
     public final void initialize()
     {
         contentManager = new StoredContentManager();
+        checkpointScheduled = new AtomicBoolean();
+        changedDuringRecovery = ConcurrentHashMap.newKeySet();
+        keyLocks = new Object[NUM_KEY_LOCKS];
+        for (int i = 0; i < NUM_KEY_LOCKS; i++)
+        {
+            keyLocks[i] = new Object();
+        }
+
+        /* When restoring from a file, the configuration is only set later */
+        if (this.config != null)
+        {
+            entryCache = new StorageEntryCache(DefaultSocialKadConfiguration.socialSettings(this.config).contentCacheSize());
+        }
     }
 
     /**
@@ -61,22 +128,442 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
     public void setConfiguration(KadConfiguration con)
     {
         this.config = con;
+        this.entryCache = new StorageEntryCache(DefaultSocialKadConfiguration.socialSettings(con).contentCacheSize());
+        this.openJournal();
+    }
+
+    /**
+     * Recover the index from the journal and start journaling changes, if the configuration asks for it.
+     *
+     * If there's a checkpoint, the recovered index replaces whatever index this DHT was loaded with;
+     * otherwise the journal is replayed on top of it, and a first checkpoint is written.
+     * If there's neither a checkpoint nor an index to start from, the index is rebuilt by scanning the content store.
+     *
+     * With lazy recovery, the journal is opened for new changes straight away and the index is recovered in the background;
+     * until it's complete, content that isn't indexed yet is looked up in the content store.
+     */
+    private synchronized void openJournal()
+    {
+        if (this.journal != null || this.config == null || !DefaultSocialKadConfiguration.socialSettings(this.config).useMetadataJournal())
+        {
+            return;
+        }
+
+        MetadataJournal j = new MetadataJournal(this.config.getNodeDataFolder(ownerId), DefaultSocialKadConfiguration.socialSettings(this.config).syncWrites());
+        boolean hasCheckpoint = j.hasCheckpoint();
+        boolean hasIndex = this.contentManager.iterateEntries().iterator().hasNext();
+        if (hasCheckpoint)
+        {
+            this.contentManager = new StoredContentManager();
+        }
+
+        if (!DefaultSocialKadConfiguration.socialSettings(this.config).lazyIndexRecovery())
+        {
+            try
+            {
+                this.recoverIndex(j, hasCheckpoint || hasIndex, false);
+                this.journal = j;
+                if (!hasCheckpoint)
+                {
+                    j.checkpoint(this.contentManager.iterateEntries());
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println("Unable to recover the DHT index from it's journal; Message: " + e.getMessage());
+            }
+            return;
+        }
+
+        try
+        {
+            j.open();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Unable to open the DHT index journal; Message: " + e.getMessage());
+            return;
+        }
+
+        this.journal = j;
+        this.recovery = CompletableFuture.runAsync(() ->
+        {
+            try
+            {
+                this.recoverIndex(j, hasCheckpoint || hasIndex, true);
+                j.checkpoint(this.contentManager.iterateEntries());
+            }
+            catch (IOException e)
+            {
+                /* Stop journaling, so the records set aside aren't lost to a checkpoint of the incomplete index */
+                System.err.println("Unable to recover the DHT index from it's journal; Message: " + e.getMessage());
+                synchronized (this)
+                {
+                    this.journal = null;
+                    try
+                    {
+                        j.close();
+                    }
+                    catch (IOException ex)
+                    {
+                        /* We're not journaling anymore anyway */
+                    }
+                }
+            }
+            finally
+            {
+                this.changedDuringRecovery.clear();
+            }
+        }, recoverer);
+    }
+
+    /**
+     * Recover the index from the journal, or from the content store if there's nothing else to recover it from
+     *
+     * @param j        The journal
+     * @param hasIndex Whether there's a checkpoint or an index loaded from a snapshot to start from
+     * @param lazy     Whether the journal was opened for new changes already, and the index is recovered in the background
+     */
+    private void recoverIndex(MetadataJournal j, boolean hasIndex, boolean lazy) throws IOException
+    {
+        AtomicLong recovered = new AtomicLong();
+        MetadataJournal.Replay replay = new MetadataJournal.Replay()
+        {
+            @Override
+            public void put(SocialKademliaStorageEntryMetadata md)
+            {
+                recovered.incrementAndGet();
+                recover(md, false);
+            }
+
+            @Override
+            public void remove(SocialKademliaStorageEntryMetadata md)
+            {
+                recovered.incrementAndGet();
+                recover(md, true);
+            }
+        };
+
+        if (lazy)
+        {
+            j.replay(replay);
+        }
+        else
+        {
+            j.recover(replay);
+        }
+
+        if (!hasIndex && recovered.get() == 0)
+        {
+            this.getContentStore().scan((byte[] data) -> this.indexStored(new DataInputStream(new ByteArrayInputStream(data)), null));
+        }
+    }
+
+    /**
+     * Apply a recovered change to the index, unless the entry has been changed since recovery started
+     */
+    private void recover(SocialKademliaStorageEntryMetadata md, boolean removed)
+    {
+        synchronized (this.changedDuringRecovery)
+        {
+            if (this.changedDuringRecovery.contains(md.hashCode()))
+            {
+                return;
+            }
+
+            this.removeFromIndex(md);
+            if (!removed)
+            {
+                this.putStorageEntry(md);
+            }
+        }
+    }
+
+    /**
+     * Add a stored entry found in the content store to the index, if it's not indexed already
+     *
+     * @param in    A stream over the serialized storage entry; only it's metadata is read
+     * @param param Only index the entry if it satisfies these parameters; null to index any entry
+     */
+    private void indexStored(DataInputStream in, GetParameter param) throws IOException
+    {
+        SocialKademliaStorageEntryMetadata md = StorageEntrySerializer.readEntryMetadata(in);
+
+        if (param != null && !md.satisfiesParameters(param))
+        {
+            return;
+        }
+
+        synchronized (this.changedDuringRecovery)
+        {
+            if (!this.changedDuringRecovery.contains(md.hashCode()))
+            {
+                this.putStorageEntry(md);
+            }
+        }
+    }
+
+    /**
+     * @return Whether the index is being recovered in the background
+     */
+    private boolean isRecovering()
+    {
+        CompletableFuture<Void> r = this.recovery;
+        return r != null && !r.isDone();
+    }
+
+    /**
+     * Wait for the index to be recovered if it's being recovered in the background
+     */
+    private void awaitRecovery()
+    {
+        CompletableFuture<Void> r = this.recovery;
+        if (r != null)
+        {
+            try
+            {
+                r.join();
+            }
+            catch (CompletionException e)
+            {
+                /* The recovery reports it's own errors */
+            }
+        }
+    }
+
+    /**
+     * While the index is recovered in the background, look for content satisfying the parameters in the content store
+     * if none is indexed yet, and index what's found.
+     * Only the metadata of entries that aren't indexed yet is read.
+     */
+    private void probe(GetParameter param)
+    {
+        if (!this.isRecovering() || param.getKey() == null || this.contentManager.contains(param))
+        {
+            return;
+        }
+
+        try
+        {
+            KademliaId key = param.getKey();
+            this.getContentStore().probe(key, (int hashCode) -> this.contentManager.contains(key, hashCode), (DataInputStream in) -> this.indexStored(in, param));
+        }
+        catch (IOException e)
+        {
+            System.err.println("Unable to look for content in the content store. Message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * While the index is recovered in the background, make sure the given entry is indexed if it's stored,
+     * then keep the recovery from changing it since it's about to be changed.
+     */
+    private void beginChange(SocialKademliaStorageEntryMetadata md)
+    {
+        if (!this.isRecovering())
+        {
+            return;
+        }
+
+        if (!this.contentManager.contains(md))
+        {
+            try
+            {
+                this.indexStored(new DataInputStream(new ByteArrayInputStream(this.getContentStore().get(md.getKey(), md.hashCode()))), null);
+            }
+            catch (FileNotFoundException e)
+            {
+                /* Not stored */
+            }
+            catch (IOException e)
+            {
+                System.err.println("Unable to look for content in the content store. Message: " + e.getMessage());
+            }
+        }
+
+        synchronized (this.changedDuringRecovery)
+        {
+            this.changedDuringRecovery.add(md.hashCode());
+        }
+    }
+
+    private void removeFromIndex(SocialKademliaStorageEntryMetadata md)
+    {
+        try
+        {
+            this.contentManager.remove(md);
+        }
+        catch (ContentNotFoundException e)
+        {
+            /* Nothing to remove */
+        }
+    }
+
+    /**
+     * @return The lock held while content with the given key is stored or removed
+     */
+    private Object lockFor(KademliaId key)
+    {
+        return this.keyLocks[Math.floorMod(key.hashCode(), NUM_KEY_LOCKS)];
     }
 
     /**
-     * Creates a new Serializer or returns an existing serializer
+     * Wait for the changes journaled to be synced; done once the key's lock is released, so syncs don't hold up other changes
+     */
+    private void awaitJournal()
+    {
+        MetadataJournal j = this.journal;
+        if (j == null)
+        {
+            return;
+        }
+
+        try
+        {
+            j.awaitSync();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Unable to sync the DHT index journal; Message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Record a change to the index in the journal, and schedule a checkpoint if one is due;
+     * the lock of the entry's key must be held, so the journal has the changes to an entry in the order they were made.
      *
-     * @return The new ContentSerializer
+     * @param md      The entry that changed
+     * @param removed Whether the entry was removed, rather than added or changed
      */
+    private void journal(SocialKademliaStorageEntryMetadata md, boolean removed)
+    {
+        MetadataJournal j = this.journal;
+        if (j == null)
+        {
+            return;
+        }
+
+        try
+        {
+            if (removed)
+            {
+                j.logRemove(md);
+            }
+            else
+            {
+                j.logPut(md);
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Unable to journal a change to the DHT index; Message: " + e.getMessage());
+            return;
+        }
+
+        if (j.isCheckpointDue() && this.checkpointScheduled.compareAndSet(false, true))
+        {
+            checkpointer.submit(() ->
+            {
+                try
+                {
+                    this.checkpoint();
+                }
+                catch (IOException e)
+                {
+                    System.err.println("Unable to checkpoint the DHT index; Message: " + e.getMessage());
+                }
+                finally
+                {
+                    this.checkpointScheduled.set(false);
+                }
+            });
+        }
+    }
+
     @Override
-    public KadSerializer<JSocialKademliaStorageEntry> getSerializer()
+    public boolean checkpoint() throws IOException
+    {
+        /* A checkpoint of an index that's still being recovered would lose the entries not recovered yet */
+        this.awaitRecovery();
+
+        MetadataJournal j = this.journal;
+        if (j == null)
+        {
+            return false;
+        }
+
+        j.checkpoint(this.contentManager.iterateEntries());
+        return true;
+    }
+
+    @Override
+    public String getOwnerId()
+    {
+        return this.ownerId;
+    }
+
+    @Override
+    public void setStatistician(SocialKadStatistician statistician)
+    {
+        this.statistician = statistician;
+    }
+
+    /**
+     * Opens the content store selected by the configuration or returns the store already opened
+     *
+     * @return The store holding the content of this DHT
+     */
+    private synchronized ContentStore getContentStore() throws IOException
+    {
+        if (null == contentStore)
+        {
+            SocialKadConfiguration settings = DefaultSocialKadConfiguration.socialSettings(this.config);
+            String folder = this.config.getNodeDataFolder(ownerId);
+            if (settings.useSegmentStorage())
+            {
+                contentStore = new SegmentContentStore(folder + File.separator + "segments", settings.syncWrites());
+            }
+            else
+            {
+                contentStore = new FileContentStore(folder, settings.syncWrites() && settings.syncContentFiles());
+            }
+        }
+
+        return contentStore;
+    }
+
+    @Override
+    public void close() throws IOException
     {
-        if (null == serializer)
+        /* The recovery uses the journal and content store */
+        this.awaitRecovery();
+
+        synchronized (this)
         {
-            serializer = new JsonSerializer<>();
+            if (null != journal)
+            {
+                journal.close();
+                journal = null;
+            }
+
+            if (null != contentStore)
+            {
+                contentStore.close();
+                contentStore = null;
+            }
         }
+    }
 
-        return serializer;
+    /**
+     * Returns the shared serializer for storage entries;
+     * entries are stored in binary form, which is also the form they're sent in, so stored entries can be sent as is.
+     *
+     * @return The ContentSerializer
+     */
+    @Override
+    public KadSerializer<JSocialKademliaStorageEntry> getSerializer()
+    {
+        return Serializers.storedEntry();
     }
 
     /**
@@ -90,9 +577,25 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
      */
     @Override
     public boolean store(JSocialKademliaStorageEntry content) throws IOException
+    {
+        boolean stored;
+        synchronized (this.lockFor(content.getContentMetadata().getKey()))
+        {
+            stored = this.storeEntry(content);
+        }
+
+        this.awaitJournal();
+        return stored;
+    }
+
+    /**
+     * Store content; the lock of the content's key must be held
+     */
+    private boolean storeEntry(JSocialKademliaStorageEntry content) throws IOException
     {
         boolean cached = content.getContentMetadata().isCached();   // Should we cache this content
         boolean isKNode = content.getContentMetadata().isKNode();   // Is this node one of the k-node
+        this.beginChange(content.getContentMetadata());
 
         /* Lets check if we have this content and it's the updated version */
         if (this.contentManager.contains(content.getContentMetadata()))
@@ -116,6 +619,7 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
                 {
                     current.setKNode();
                 }
+                this.journal(current, false);
                 return false;
             }
             else
@@ -154,6 +658,8 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
             content.getContentMetadata().setKNode(isKNode);
             this.contentManager.put(content.getContentMetadata());
             this.putContentToFile(content, content.getContentMetadata());
+            this.entryCache.invalidate(content.getContentMetadata().hashCode());
+            this.journal(content.getContentMetadata(), false);
             return true;
         }
         catch (ContentExistException e)
@@ -199,17 +705,17 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
     }
 
     /**
-     * Write the given storage entry to it's file
+     * Write the given storage entry to the content store
      */
     private void putContentToFile(JSocialKademliaStorageEntry content, SocialKademliaStorageEntryMetadata entryMD) throws IOException
     {
-        String contentStorageFolder = this.getContentStorageFolderName(content.getContentMetadata().getKey());
-
-        try (FileOutputStream fout = new FileOutputStream(contentStorageFolder + File.separator + entryMD.hashCode() + ".kct");
-                DataOutputStream dout = new DataOutputStream(fout))
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (DataOutputStream dout = new DataOutputStream(bout))
         {
             this.getSerializer().write(content, dout);
         }
+
+        this.getContentStore().put(entryMD.getKey(), entryMD.hashCode(), bout.toByteArray());
     }
 
     /**
@@ -222,6 +728,7 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
     @Override
     public void update(JSocialKademliaStorageEntry newContent) throws IOException
     {
+        this.beginChange(newContent.getContentMetadata());
         if (this.contentManager.contains(newContent.getContentMetadata()))
         {
             this.store(newContent);
@@ -233,7 +740,7 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
     }
 
     /**
-     * Retrieves a Content from local storage
+     * Retrieves a Content from local storage, or from the in-memory cache of recently read entries
      *
      * @param key      The Key of the content to retrieve
      * @param hashCode The hash code of the content to retrieve
@@ -245,9 +752,27 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
     @Override
     public JSocialKademliaStorageEntry retrieve(KademliaId key, int hashCode) throws FileNotFoundException, IOException, ClassNotFoundException
     {
-        String folder = this.getContentStorageFolderName(key);
-        DataInputStream din = new DataInputStream(new FileInputStream(folder + File.separator + hashCode + ".kct"));
-        return this.getSerializer().read(din);
+        JSocialKademliaStorageEntry entry = this.entryCache.get(key, hashCode);
+        if (this.statistician != null)
+        {
+            this.statistician.addContentCacheLookup(entry != null);
+        }
+
+        if (entry != null)
+        {
+            return entry;
+        }
+
+        /* Not cached, read it from the store; take the cache version first so we don't cache an entry that changes while we read it */
+        long cacheVersion = this.entryCache.version();
+        byte[] data = this.getContentStore().get(key, hashCode);
+        try (DataInputStream din = new DataInputStream(new ByteArrayInputStream(data)))
+        {
+            entry = this.getSerializer().read(din);
+        }
+
+        this.entryCache.put(entry, cacheVersion);
+        return entry;
     }
 
     /**
@@ -260,6 +785,7 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
     @Override
     public boolean contains(GetParameter param)
     {
+        this.probe(param);
         return this.contentManager.contains(param);
     }
 
@@ -308,6 +834,7 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
         /* Load a KadContent if any exist for the given criteria */
         try
         {
+            this.probe(param);
             SocialKademliaStorageEntryMetadata e = this.contentManager.get(param);
             return this.retrieve(e.getKey(), e.hashCode());
         }
@@ -324,6 +851,41 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
         throw new NoSuchElementException();
     }
 
+    @Override
+    public SocialKademliaStorageEntryMetadata getStorageEntryMetadata(GetParameter param) throws NoSuchElementException
+    {
+        this.probe(param);
+        return this.contentManager.get(param);
+    }
+
+    /**
+     * Get the stored form of a content without deserializing it; this is what's sent to other nodes,
+     * so content can be served with it's payload still compressed and without being decoded and encoded again.
+     *
+     * @param param The parameters used to filter the content needed
+     *
+     * @return The serialized storage entry, mapped from the store where possible
+     *
+     * @throws java.io.IOException
+     */
+    @Override
+    public ByteBuffer getSerialized(GetParameter param) throws NoSuchElementException, IOException
+    {
+        this.probe(param);
+        SocialKademliaStorageEntryMetadata e = this.contentManager.get(param);
+        try
+        {
+            return this.getContentStore().getBuffer(e.getKey(), e.hashCode());
+        }
+        catch (FileNotFoundException ex)
+        {
+            System.err.println("Error while loading file for content. Message: " + ex.getMessage());
+        }
+
+        /* If we got here, means we got no entries */
+        throw new NoSuchElementException();
+    }
+
     /**
      * Delete a content from local storage
      *
@@ -339,19 +901,27 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
     }
 
     /**
-     * Similar to the remove method, however, in this case, we remove the content even if it's cached
+     * Similar to the remove method, however, in this case, we remove the content even if it's cached;
+     * the lock of the content's key must be held
      */
     private void absoluteRemove(SocialKademliaStorageEntryMetadata entry) throws ContentNotFoundException
     {
         contentManager.remove(entry);
+        this.entryCache.invalidate(entry.hashCode());
+        this.journal(entry, true);
 
-        String folder = this.getContentStorageFolderName(entry.getKey());
-        File file = new File(folder + File.separator + entry.hashCode() + ".kct");
-        if (file.exists())
+        boolean existed;
+        try
         {
-            file.delete();
+            existed = this.getContentStore().remove(entry.getKey(), entry.hashCode());
         }
-        else
+        catch (IOException e)
+        {
+            System.err.println("Error while removing content from the content store. Message: " + e.getMessage());
+            return;
+        }
+
+        if (!existed)
         {
             throw new ContentNotFoundException();
         }
@@ -360,40 +930,28 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
     @Override
     public void remove(SocialKademliaStorageEntryMetadata entry) throws ContentNotFoundException
     {
-        /* If it's cached data, we don't remove it, just set that we are no longer one of the k-closest */
-        if (this.contentManager.get(entry).isCached())
+        try
         {
-            this.contentManager.get(entry).setKNode(false);
-            return;
-        }
-
-        this.absoluteRemove(entry);
-    }
+            synchronized (this.lockFor(entry.getKey()))
+            {
+                this.beginChange(entry);
 
-    /**
-     * Get the name of the folder for which a content should be stored
-     *
-     * @param key The key of the content
-     *
-     * @return String The name of the folder
-     */
-    private String getContentStorageFolderName(KademliaId key)
-    {
-        /**
-         * Each content is stored in a folder named after the first 2 characters of the NodeId
-         *
-         * The name of the file containing the content is the hash of this content
-         */
-        String folderName = key.hexRepresentation().substring(0, 2);
-        File contentStorageFolder = new File(this.config.getNodeDataFolder(ownerId) + File.separator + folderName);
+                /* If it's cached data, we don't remove it, just set that we are no longer one of the k-closest */
+                if (this.contentManager.get(entry).isCached())
+                {
+                    SocialKademliaStorageEntryMetadata current = this.contentManager.get(entry);
+                    current.setKNode(false);
+                    this.journal(current, false);
+                    return;
+                }
 
-        /* Create the content folder if it doesn't exist */
-        if (!contentStorageFolder.isDirectory())
+                this.absoluteRemove(entry);
+            }
+        }
+        finally
         {
-            contentStorageFolder.mkdir();
+            this.awaitJournal();
         }
-
-        return contentStorageFolder.toString();
     }
 
     /**
@@ -405,6 +963,12 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
         return contentManager.getAllEntries();
     }
 
+    @Override
+    public Iterable<SocialKademliaStorageEntryMetadata> iterateStorageEntries()
+    {
+        return contentManager.iterateEntries();
+    }
+
     /**
      * @return A List of all StorageEntries of cached content for this node
      */
@@ -424,15 +988,20 @@ public class JSocialKademliaDHT implements SocialKademliaDHT
     {
         for (KademliaStorageEntryMetadata e : ientries)
         {
-            SocialKademliaStorageEntryMetadata se = (SocialKademliaStorageEntryMetadata) e;
-            try
-            {
-                this.contentManager.put(se);
-            }
-            catch (ContentExistException ex)
-            {
-                /* Entry already exist, no need to store it again */
-            }
+            this.putStorageEntry((SocialKademliaStorageEntryMetadata) e);
+        }
+    }
+
+    @Override
+    public void putStorageEntry(SocialKademliaStorageEntryMetadata entry)
+    {
+        try
+        {
+            this.contentManager.put(entry);
+        }
+        catch (ContentExistException ex)
+        {
+            /* Entry already exist, no need to store it again */
         }
     }
 
@@ -1,6 +1,8 @@
 package socialkademlia.dht;
 
+import java.nio.charset.StandardCharsets;
 import kademlia.dht.KadContent;
+import socialkademlia.util.compression.NoCompressionCodec;
 
 /**
  * A JSocialKademliaStorageEntry class that is used to store a content on the DHT
@@ -11,13 +13,13 @@ import kademlia.dht.KadContent;
 public class JSocialKademliaStorageEntry implements SocialKademliaStorageEntry
 {
 
-    private String content;
+    private byte[] content;
     private final JSocialKademliaStorageEntryMetadata metadata;
-    private boolean isCompressed;       // Is this entry in compressed form
+    private byte codec;       // The codec this entry's content is compressed with
 
     
     {
-        this.isCompressed = false;
+        this.codec = NoCompressionCodec.ID;
     }
 
     public JSocialKademliaStorageEntry(final KadContent content)
@@ -31,28 +33,58 @@ public class JSocialKademliaStorageEntry implements SocialKademliaStorageEntry
         this.metadata = metadata;
     }
 
+    /**
+     * Create an entry from it's parts; used when reading an entry from storage or from the network.
+     *
+     * @param content  The content bytes, compressed with the given codec
+     * @param metadata The metadata of the content
+     * @param codec    The id of the codec the content is compressed with
+     */
+    public JSocialKademliaStorageEntry(final byte[] content, final JSocialKademliaStorageEntryMetadata metadata, final byte codec)
+    {
+        this.content = content;
+        this.metadata = metadata;
+        this.codec = codec;
+    }
+
+    /**
+     * Create a copy of a storage entry; the copy has it's own metadata.
+     * The content bytes are shared, they're never changed in place.
+     *
+     * @param entry The entry to copy
+     */
+    public JSocialKademliaStorageEntry(final JSocialKademliaStorageEntry entry)
+    {
+        this.content = entry.content;
+        this.metadata = new JSocialKademliaStorageEntryMetadata(entry.getContentMetadata());
+        this.codec = entry.codec;
+    }
+
     @Override
     public final void setContent(final byte[] data)
     {
-        this.content = new String(data);
+        this.content = data;
     }
 
     @Override
     public final void setContent(String data)
     {
-        this.content = data;
+        this.content = data.getBytes(StandardCharsets.UTF_8);
     }
 
+    /**
+     * @return The content bytes; the array is not copied, so it should not be modified
+     */
     @Override
     public final byte[] getContent()
     {
-        return this.content.getBytes();
+        return this.content;
     }
 
     @Override
     public final String getContentString()
     {
-        return this.content;
+        return new String(this.content, StandardCharsets.UTF_8);
     }
 
     @Override
@@ -64,19 +96,25 @@ public class JSocialKademliaStorageEntry implements SocialKademliaStorageEntry
     @Override
     public boolean isCompressed()
     {
-        return this.isCompressed;
+        return this.codec != NoCompressionCodec.ID;
+    }
+
+    @Override
+    public void setCompressed(byte codec)
+    {
+        this.codec = codec;
     }
 
     @Override
-    public void setCompressed()
+    public byte getCompressionCodec()
     {
-        this.isCompressed = true;
+        return this.codec;
     }
 
     @Override
     public void setDecompressed()
     {
-        this.isCompressed = false;
+        this.codec = NoCompressionCodec.ID;
     }
 
     @Override
@@ -85,7 +123,7 @@ public class JSocialKademliaStorageEntry implements SocialKademliaStorageEntry
         StringBuilder sb = new StringBuilder("[StorageEntry: ");
 
         sb.append("[Content: ");
-        sb.append(this.getContent());
+        sb.append(this.isCompressed() ? this.content.length + " compressed bytes" : this.getContentString());
         sb.append("]");
 
         sb.append(this.getContentMetadata());
@@ -41,6 +41,39 @@ public class JSocialKademliaStorageEntryMetadata implements SocialKademliaStorag
         this.lastRepublished = System.currentTimeMillis() / 1000L;
     }
 
+    /**
+     * Create metadata from it's fields; used when reading metadata from it's binary form.
+     */
+    public JSocialKademliaStorageEntryMetadata(KademliaId key, String ownerId, String type, int contentHash, long updatedTs,
+            boolean isCached, boolean isKNode, long lastRepublished)
+    {
+        this.key = key;
+        this.ownerId = ownerId;
+        this.type = type;
+        this.contentHash = contentHash;
+        this.updatedTs = updatedTs;
+        this.isCached = isCached;
+        this.isKNode = isKNode;
+        this.lastRepublished = lastRepublished;
+    }
+
+    /**
+     * Create a copy of the given metadata
+     *
+     * @param md The metadata to copy
+     */
+    public JSocialKademliaStorageEntryMetadata(SocialKademliaStorageEntryMetadata md)
+    {
+        this.key = md.getKey();
+        this.ownerId = md.getOwnerId();
+        this.type = md.getType();
+        this.contentHash = md.getContentHash();
+        this.updatedTs = md.getLastUpdatedTimestamp();
+        this.isCached = md.isCached();
+        this.isKNode = md.isKNode();
+        this.lastRepublished = md.lastRepublished();
+    }
+
     @Override
     public KademliaId getKey()
     {
@@ -2,6 +2,7 @@ package socialkademlia.dht;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.NoSuchElementException;
 import kademlia.KadConfiguration;
@@ -10,6 +11,7 @@ import kademlia.dht.KadContent;
 import kademlia.exceptions.ContentNotFoundException;
 import kademlia.node.KademliaId;
 import kademlia.util.serializer.KadSerializer;
+import socialkademlia.SocialKadStatistician;
 
 /**
  * Interface that specifies the methods of SocialKademlia's DHT
@@ -32,6 +34,35 @@ public interface SocialKademliaDHT
      */
     public void setConfiguration(KadConfiguration con);
 
+    /**
+     * Set the statistician used to record statistics about this DHT
+     *
+     * @param statistician The statistician of the local node
+     */
+    public void setStatistician(SocialKadStatistician statistician);
+
+    /**
+     * Release the resources held by the local content storage; called when the node shuts down.
+     *
+     * @throws java.io.IOException
+     */
+    public void close() throws IOException;
+
+    /**
+     * Write a checkpoint of the index of stored content, if this DHT journals it's index.
+     * A DHT that journals it's index recovers it by itself, so it doesn't need to be saved with the node state.
+     *
+     * @return Whether this DHT journals it's index
+     *
+     * @throws java.io.IOException
+     */
+    public boolean checkpoint() throws IOException;
+
+    /**
+     * @return The owner of the node this DHT belongs to
+     */
+    public String getOwnerId();
+
     /**
      * Creates a new Serializer or returns an existing serializer
      *
@@ -96,6 +127,27 @@ public interface SocialKademliaDHT
      */
     public JSocialKademliaStorageEntry get(GetParameter param) throws NoSuchElementException, IOException;
 
+    /**
+     * Get the metadata of the content satisfying the given criteria, without loading the content.
+     *
+     * @param param The parameters used to filter the content needed
+     *
+     * @return The metadata of the content
+     */
+    public SocialKademliaStorageEntryMetadata getStorageEntryMetadata(GetParameter param) throws NoSuchElementException;
+
+    /**
+     * Get the StorageEntry for the content if any exist, in the serialized form it is stored and sent in,
+     * without deserializing it. The returned buffer must not be modified.
+     *
+     * @param param The parameters used to filter the content needed
+     *
+     * @return The serialized StorageEntry
+     *
+     * @throws java.io.IOException
+     */
+    public ByteBuffer getSerialized(GetParameter param) throws NoSuchElementException, IOException;
+
     /**
      * Delete a content from local storage
      *
@@ -113,6 +165,14 @@ public interface SocialKademliaDHT
      */
     public List<SocialKademliaStorageEntryMetadata> getStorageEntries();
 
+    /**
+     * Iterate over the StorageEntries for this node without copying them into a list.
+     * Entries added or removed while iterating may or may not be seen.
+     *
+     * @return The StorageEntries for this node
+     */
+    public Iterable<SocialKademliaStorageEntryMetadata> iterateStorageEntries();
+
     /**
      * Used to add a list of storage entries for existing content to the DHT.
      * Mainly used when retrieving StorageEntries from a saved state file.
@@ -121,6 +181,14 @@ public interface SocialKademliaDHT
      */
     public void putStorageEntries(List<SocialKademliaStorageEntryMetadata> ientries);
 
+    /**
+     * Used to add a storage entry for existing content to the DHT.
+     * Mainly used when retrieving StorageEntries from a saved state file, one at a time.
+     *
+     * @param entry The entry to add
+     */
+    public void putStorageEntry(SocialKademliaStorageEntryMetadata entry);
+
     /**
      * Handle storing content locally to keep the content cached.
      *
@@ -12,7 +12,7 @@ public interface SocialKademliaStorageEntry extends KademliaStorageEntry
 {
 
     /**
-     * Set the content value of this storage entry
+     * Set the content value of this storage entry from a UTF-8 string
      *
      * @param data
      */
@@ -25,8 +25,15 @@ public interface SocialKademliaStorageEntry extends KademliaStorageEntry
 
     /**
      * Specify that the storage entry is compressed
+     *
+     * @param codec The id of the codec the content was compressed with
+     */
+    public void setCompressed(byte codec);
+
+    /**
+     * @return The id of the codec the content is compressed with, NoCompressionCodec.ID if it's not compressed
      */
-    public void setCompressed();
+    public byte getCompressionCodec();
 
     /**
      * Specify that the storage entry is decompressed
@@ -34,7 +41,7 @@ public interface SocialKademliaStorageEntry extends KademliaStorageEntry
     public void setDecompressed();
 
     /**
-     * @return The content in string format
+     * @return The content decoded as a UTF-8 string
      */
     public String getContentString();
 
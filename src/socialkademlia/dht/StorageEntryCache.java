@@ -0,0 +1,134 @@
+package socialkademlia.dht;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import kademlia.node.KademliaId;
+
+/**
+ * An in-memory LRU cache of storage entries read from the local storage,
+ * so popular content does not have to be read from it's file and deserialized on every request.
+ *
+ * The cache is bounded by the size in bytes of the entries it holds rather than by the number of entries.
+ * Entries are copied in and out of the cache, since callers are free to change the entries they're given.
+ *
+ * @author Joshua Kissoon
+ * @since 20140612
+ */
+class StorageEntryCache
+{
+
+    /* Rough size of an entry's metadata and the cache's bookkeeping for it */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final long maxSize;
+    private long size;
+
+    /* Entries keyed by the hash of their metadata, in access order */
+    private final LinkedHashMap<Integer, JSocialKademliaStorageEntry> entries;
+
+    /* Incremented on every invalidation; used to make sure we don't cache an entry read before it was changed */
+    private long version;
+
+
+    {
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        size = 0;
+        version = 0;
+    }
+
+    /**
+     * @param maxSize The maximum total size in bytes of the entries kept in this cache
+     */
+    public StorageEntryCache(long maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param key      The key of the content
+     * @param hashCode The hash code of the content's metadata
+     *
+     * @return A copy of the cached entry or null if the entry is not cached
+     */
+    public synchronized JSocialKademliaStorageEntry get(KademliaId key, int hashCode)
+    {
+        JSocialKademliaStorageEntry e = this.entries.get(hashCode);
+
+        if (e == null || !e.getContentMetadata().getKey().equals(key))
+        {
+            return null;
+        }
+
+        return new JSocialKademliaStorageEntry(e);
+    }
+
+    /**
+     * @return The current version of the cache, to be passed to put() for an entry about to be read from storage
+     */
+    public synchronized long version()
+    {
+        return this.version;
+    }
+
+    /**
+     * Cache an entry that was read from storage.
+     *
+     * The entry is not cached if anything was invalidated since the given version was taken, since the entry could be stale.
+     *
+     * @param entry   The entry read
+     * @param version The version of the cache before the entry was read
+     */
+    public synchronized void put(JSocialKademliaStorageEntry entry, long version)
+    {
+        long entrySize = sizeOf(entry);
+        if (version != this.version || entrySize > this.maxSize)
+        {
+            return;
+        }
+
+        JSocialKademliaStorageEntry old = this.entries.put(entry.getContentMetadata().hashCode(), new JSocialKademliaStorageEntry(entry));
+        if (old != null)
+        {
+            this.size -= sizeOf(old);
+        }
+        this.size += entrySize;
+
+        /* Evict the least recently used entries until we're within our size */
+        Iterator<Map.Entry<Integer, JSocialKademliaStorageEntry>> it = this.entries.entrySet().iterator();
+        while (this.size > this.maxSize && it.hasNext())
+        {
+            this.size -= sizeOf(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    /**
+     * Remove an entry from the cache; called whenever the stored entry changes or is removed.
+     *
+     * @param hashCode The hash code of the content's metadata
+     */
+    public synchronized void invalidate(int hashCode)
+    {
+        this.version++;
+
+        JSocialKademliaStorageEntry old = this.entries.remove(hashCode);
+        if (old != null)
+        {
+            this.size -= sizeOf(old);
+        }
+    }
+
+    /**
+     * @return The size in bytes of the entries in the cache
+     */
+    public synchronized long size()
+    {
+        return this.size;
+    }
+
+    private static long sizeOf(JSocialKademliaStorageEntry entry)
+    {
+        return entry.getContent().length + ENTRY_OVERHEAD;
+    }
+}
@@ -1,10 +1,11 @@
 package socialkademlia.dht;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 import kademlia.dht.GetParameter;
 import kademlia.dht.KadContent;
 import kademlia.exceptions.ContentExistException;
@@ -16,6 +17,9 @@ import kademlia.node.KademliaId;
  * Instead we store content into files
  * We use this Class to keep track of all content stored
  *
+ * The entries for each key are kept in an immutable list that is replaced on every change,
+ * so reads never lock and writes only contend with other writes to the same key.
+ *
  * @author Joshua Kissoon
  * @since 20140226
  */
@@ -24,9 +28,9 @@ class StoredContentManager
 
     private final Map<KademliaId, List<SocialKademliaStorageEntryMetadata>> entries;
 
-    
+
     {
-        entries = new HashMap<>();
+        entries = new ConcurrentHashMap<>();
     }
 
     /**
@@ -44,18 +48,34 @@ class StoredContentManager
      *
      * @param entry The StorageEntry to store
      */
-    public SocialKademliaStorageEntryMetadata put(SocialKademliaStorageEntryMetadata entry) throws ContentExistException
+    public SocialKademliaStorageEntryMetadata put(final SocialKademliaStorageEntryMetadata entry) throws ContentExistException
     {
-        if (!this.entries.containsKey(entry.getKey()))
-        {
-            this.entries.put(entry.getKey(), new ArrayList<>());
-        }
+        final GetParameter param = new GetParameter(entry);
+        final boolean[] added = new boolean[1];
 
-        /* If this entry doesn't already exist, then we add it */
-        if (!this.contains(entry))
+        this.entries.compute(entry.getKey(), (KademliaId key, List<SocialKademliaStorageEntryMetadata> current) ->
         {
-            this.entries.get(entry.getKey()).add(entry);
+            if (current == null)
+            {
+                added[0] = true;
+                return Collections.singletonList(entry);
+            }
+
+            /* If this entry doesn't already exist, then we add it */
+            if (find(current, param) != null)
+            {
+                return current;
+            }
+
+            List<SocialKademliaStorageEntryMetadata> updated = new ArrayList<>(current.size() + 1);
+            updated.addAll(current);
+            updated.add(entry);
+            added[0] = true;
+            return Collections.unmodifiableList(updated);
+        });
 
+        if (added[0])
+        {
             return entry;
         }
         else
@@ -65,36 +85,51 @@ class StoredContentManager
     }
 
     /**
-     * Checks if our DHT has a Content for the given criteria
+     * Check if an entry with the given metadata hash code is stored under a key
      *
-     * @param param The parameters used to search for a content
+     * @param key      The key of the content
+     * @param hashCode The hash code of the entry's metadata
      *
      * @return boolean
      */
-    public synchronized boolean contains(GetParameter param)
+    public boolean contains(KademliaId key, int hashCode)
     {
-        if (this.entries.containsKey(param.getKey()))
+        List<SocialKademliaStorageEntryMetadata> entrySet = this.entries.get(key);
+        if (entrySet == null)
         {
-            /* Content with this key exist, check if any match the rest of the search criteria */
-            for (SocialKademliaStorageEntryMetadata e : this.entries.get(param.getKey()))
-            {
-                /* If any entry satisfies the given parameters, return true */
-                if (e.satisfiesParameters(param))
-                {
-                    return true;
-                }
-            }
+            return false;
         }
-        else
+
+        for (SocialKademliaStorageEntryMetadata e : entrySet)
         {
+            if (e.hashCode() == hashCode)
+            {
+                return true;
+            }
         }
+
         return false;
     }
 
+    /**
+     * Checks if our DHT has a Content for the given criteria
+     *
+     * @param param The parameters used to search for a content
+     *
+     * @return boolean
+     */
+    public boolean contains(GetParameter param)
+    {
+        List<SocialKademliaStorageEntryMetadata> entrySet = this.entries.get(param.getKey());
+
+        /* If any entry satisfies the given parameters, return true */
+        return entrySet != null && find(entrySet, param) != null;
+    }
+
     /**
      * Check if a content exist in the DHT
      */
-    public synchronized boolean contains(KadContent content)
+    public boolean contains(KadContent content)
     {
         return this.contains(new GetParameter(content));
     }
@@ -102,7 +137,7 @@ class StoredContentManager
     /**
      * Check if a StorageEntry exist on this DHT
      */
-    public synchronized boolean contains(SocialKademliaStorageEntryMetadata entry)
+    public boolean contains(SocialKademliaStorageEntryMetadata entry)
     {
         return this.contains(new GetParameter(entry));
     }
@@ -116,25 +151,22 @@ class StoredContentManager
      */
     public SocialKademliaStorageEntryMetadata get(GetParameter param) throws NoSuchElementException
     {
-        if (this.entries.containsKey(param.getKey()))
+        List<SocialKademliaStorageEntryMetadata> entrySet = this.entries.get(param.getKey());
+
+        if (entrySet == null)
         {
-            /* Content with this key exist, check if any match the rest of the search criteria */
-            for (SocialKademliaStorageEntryMetadata e : this.entries.get(param.getKey()))
-            {
-                /* If any entry satisfies the given parameters, return true */
-                if (e.satisfiesParameters(param))
-                {
-                    return e;
-                }
-            }
+            throw new NoSuchElementException("No content exist for the given parameters");
+        }
 
+        /* Content with this key exist, check if any match the rest of the search criteria */
+        SocialKademliaStorageEntryMetadata e = find(entrySet, param);
+        if (e == null)
+        {
             /* If we got here, means we didn't find any entry */
             throw new NoSuchElementException();
         }
-        else
-        {
-            throw new NoSuchElementException("No content exist for the given parameters");
-        }
+
+        return e;
     }
 
     public SocialKademliaStorageEntryMetadata get(SocialKademliaStorageEntryMetadata md)
@@ -142,24 +174,48 @@ class StoredContentManager
         return this.get(new GetParameter(md));
     }
 
+    /**
+     * @return The first entry in the list that satisfies the given parameters, or null if none does
+     */
+    private static SocialKademliaStorageEntryMetadata find(List<SocialKademliaStorageEntryMetadata> entrySet, GetParameter param)
+    {
+        for (SocialKademliaStorageEntryMetadata e : entrySet)
+        {
+            if (e.satisfiesParameters(param))
+            {
+                return e;
+            }
+        }
+
+        return null;
+    }
+
     /**
      * @return A list of all storage entries
      */
-    public synchronized List<SocialKademliaStorageEntryMetadata> getAllEntries()
+    public List<SocialKademliaStorageEntryMetadata> getAllEntries()
     {
         List<SocialKademliaStorageEntryMetadata> entriesRet = new ArrayList<>();
 
         for (List<SocialKademliaStorageEntryMetadata> entrySet : this.entries.values())
         {
-            if (entrySet.size() > 0)
-            {
-                entriesRet.addAll(entrySet);
-            }
+            entriesRet.addAll(entrySet);
         }
 
         return entriesRet;
     }
 
+    /**
+     * Iterate over all storage entries without copying them;
+     * the lists of entries are never changed in place, so iterating is safe while entries are added and removed.
+     *
+     * @return All storage entries
+     */
+    public Iterable<SocialKademliaStorageEntryMetadata> iterateEntries()
+    {
+        return () -> this.entries.values().stream().flatMap(List::stream).iterator();
+    }
+
     /**
      * @return A list of all storage entries for cached content
      */
@@ -169,14 +225,11 @@ class StoredContentManager
 
         for (List<SocialKademliaStorageEntryMetadata> entrySet : this.entries.values())
         {
-            if (entrySet.size() > 0)
+            for (SocialKademliaStorageEntryMetadata md : entrySet)
             {
-                for (SocialKademliaStorageEntryMetadata md : entriesRet)
+                if (md.isCached())
                 {
-                    if (md.isCached())
-                    {
-                        entriesRet.add(md);
-                    }
+                    entriesRet.add(md);
                 }
             }
         }
@@ -189,30 +242,44 @@ class StoredContentManager
         this.remove(new JSocialKademliaStorageEntryMetadata(content));
     }
 
-    public void remove(SocialKademliaStorageEntryMetadata entry) throws ContentNotFoundException
+    public void remove(final SocialKademliaStorageEntryMetadata entry) throws ContentNotFoundException
     {
-        if (contains(entry))
+        final GetParameter param = new GetParameter(entry);
+        final boolean[] removed = new boolean[1];
+
+        this.entries.computeIfPresent(entry.getKey(), (KademliaId key, List<SocialKademliaStorageEntryMetadata> current) ->
         {
-            this.entries.get(entry.getKey()).remove(entry);
-        }
-        else
+            SocialKademliaStorageEntryMetadata existing = find(current, param);
+            if (existing == null)
+            {
+                return current;
+            }
+
+            removed[0] = true;
+            if (current.size() == 1)
+            {
+                /* This was the last entry for this key, no need to keep an empty list around */
+                return null;
+            }
+
+            List<SocialKademliaStorageEntryMetadata> updated = new ArrayList<>(current);
+            updated.remove(existing);
+            return Collections.unmodifiableList(updated);
+        });
+
+        if (!removed[0])
         {
             throw new ContentNotFoundException("This content does not exist in the Storage Entries");
         }
     }
 
     @Override
-    public synchronized String toString()
+    public String toString()
     {
         StringBuilder sb = new StringBuilder("Stored Content: \n");
         int count = 0;
         for (List<SocialKademliaStorageEntryMetadata> es : this.entries.values())
         {
-            if (entries.size() < 1)
-            {
-                continue;
-            }
-
             for (SocialKademliaStorageEntryMetadata e : es)
             {
                 sb.append(++count);
@@ -225,4 +292,4 @@ class StoredContentManager
         sb.append("\n");
         return sb.toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,129 @@
+package socialkademlia.dht.storage;
+
+import java.io.DataInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.IntPredicate;
+import kademlia.node.KademliaId;
+
+/**
+ * Keeps the serialized storage entries of the local DHT.
+ *
+ * An entry is identified by the key of it's content and the hash code of it's metadata.
+ *
+ * @author Joshua Kissoon
+ * @since 20140613
+ */
+public interface ContentStore
+{
+
+    /**
+     * Receives stored entries when the store is scanned
+     */
+    public interface Visitor
+    {
+
+        /**
+         * @param data A serialized storage entry
+         *
+         * @throws java.io.IOException
+         */
+        public void visit(byte[] data) throws IOException;
+    }
+
+    /**
+     * Reads the start of stored entries when the store is probed for a key
+     */
+    public interface HeaderVisitor
+    {
+
+        /**
+         * @param in A stream over a serialized storage entry; the visitor should only read as far as the entry's metadata
+         *
+         * @throws java.io.IOException
+         */
+        public void visit(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * Store an entry, replacing any entry stored under the same key and hash code
+     *
+     * @param key      The key of the content
+     * @param hashCode The hash code of the content's metadata
+     * @param data     The serialized storage entry
+     *
+     * @throws java.io.IOException
+     */
+    public void put(KademliaId key, int hashCode, byte[] data) throws IOException;
+
+    /**
+     * Get a stored entry
+     *
+     * @param key      The key of the content
+     * @param hashCode The hash code of the content's metadata
+     *
+     * @return The serialized storage entry
+     *
+     * @throws java.io.FileNotFoundException If no entry is stored for the given key and hash code
+     * @throws java.io.IOException
+     */
+    public byte[] get(KademliaId key, int hashCode) throws FileNotFoundException, IOException;
+
+    /**
+     * Get a view of a stored entry without copying it out of the store where possible; the view must not be modified.
+     *
+     * The view stays valid after the entry is replaced or removed, but should not be kept for long since it may map a file.
+     *
+     * @param key      The key of the content
+     * @param hashCode The hash code of the content's metadata
+     *
+     * @return The serialized storage entry, positioned at it's first byte
+     *
+     * @throws java.io.FileNotFoundException If no entry is stored for the given key and hash code
+     * @throws java.io.IOException
+     */
+    public ByteBuffer getBuffer(KademliaId key, int hashCode) throws FileNotFoundException, IOException;
+
+    /**
+     * Remove a stored entry
+     *
+     * @param key      The key of the content
+     * @param hashCode The hash code of the content's metadata
+     *
+     * @return Whether an entry was stored for the given key and hash code
+     *
+     * @throws java.io.IOException
+     */
+    public boolean remove(KademliaId key, int hashCode) throws IOException;
+
+    /**
+     * Visit the start of the entries stored under a key, skipping those already known; used to find content that isn't indexed yet.
+     * A store that can't tell the keys of it's entries apart may also visit entries stored under other keys,
+     * so the visitor must check the key of every entry.
+     *
+     * @param key     The key of the content
+     * @param known   Whether an entry with the given metadata hash code is known already, in which case it's not visited
+     * @param visitor Receives the entries
+     *
+     * @throws java.io.IOException
+     */
+    public void probe(KademliaId key, IntPredicate known, HeaderVisitor visitor) throws IOException;
+
+    /**
+     * Visit every stored entry; used to rebuild the index of stored content when it's been lost.
+     * The entries may be visited from several threads at once.
+     *
+     * @param visitor Receives the entries
+     *
+     * @throws java.io.IOException
+     */
+    public void scan(Visitor visitor) throws IOException;
+
+    /**
+     * Write out anything pending and release the resources held by this store
+     *
+     * @throws java.io.IOException
+     */
+    public void close() throws IOException;
+}
@@ -0,0 +1,230 @@
+package socialkademlia.dht.storage;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import kademlia.node.KademliaId;
+import socialkademlia.util.io.AtomicFiles;
+import socialkademlia.util.io.SyncScheduler;
+
+/**
+ * Stores each entry in a file of it's own.
+ *
+ * Each entry is stored in a folder named after the first 2 characters of the content's key,
+ * in a file named after the hash code of the entry's metadata.
+ * Files are replaced atomically, so an entry is never left half written.
+ *
+ * @author Joshua Kissoon
+ * @since 20140613
+ */
+public class FileContentStore implements ContentStore
+{
+
+    /* How much of an entry's file is read at a time when probing; enough for the metadata of most entries */
+    private static final int PROBE_BUFFER_SIZE = 512;
+
+    private final String folder;
+    private final boolean sync;
+
+    /**
+     * @param folder The folder in which to store the content folders
+     */
+    public FileContentStore(String folder)
+    {
+        this(folder, false);
+    }
+
+    /**
+     * @param folder The folder in which to store the content folders
+     * @param sync   Whether entries are synced to disk before a put or remove returns
+     */
+    public FileContentStore(String folder, boolean sync)
+    {
+        this.folder = folder;
+        this.sync = sync;
+    }
+
+    @Override
+    public void put(KademliaId key, int hashCode, byte[] data) throws IOException
+    {
+        AtomicFiles.write(this.getFile(key, hashCode), data, this.sync);
+    }
+
+    @Override
+    public byte[] get(KademliaId key, int hashCode) throws FileNotFoundException, IOException
+    {
+        File file = this.getFile(key, hashCode);
+        if (!file.exists())
+        {
+            throw new FileNotFoundException(file.toString());
+        }
+
+        return Files.readAllBytes(file.toPath());
+    }
+
+    /**
+     * Entries are small files, which are read rather than mapped; a mapping per lookup costs more than the read,
+     * and mappings are only released when they're garbage collected.
+     */
+    @Override
+    public ByteBuffer getBuffer(KademliaId key, int hashCode) throws FileNotFoundException, IOException
+    {
+        return ByteBuffer.wrap(this.get(key, hashCode));
+    }
+
+    @Override
+    public boolean remove(KademliaId key, int hashCode) throws IOException
+    {
+        File file = this.getFile(key, hashCode);
+        if (file.exists())
+        {
+            file.delete();
+            if (this.sync)
+            {
+                SyncScheduler.shared().syncFolder(file.getParentFile().toPath());
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * File names don't tell the keys of entries apart, so every entry in the key's folder is visited that isn't known already.
+     * File names do tell the hash codes of entries, so known entries aren't opened, and only the start of the others is read.
+     */
+    @Override
+    public void probe(KademliaId key, IntPredicate known, HeaderVisitor visitor) throws IOException
+    {
+        File contentFolder = new File(this.folder + File.separator + key.hexRepresentation().substring(0, 2));
+        File[] files = contentFolder.listFiles((File f) -> f.getName().endsWith(".kct"));
+        if (files == null)
+        {
+            return;
+        }
+
+        for (File file : files)
+        {
+            String name = file.getName();
+            try
+            {
+                if (known.test(Integer.parseInt(name.substring(0, name.length() - 4))))
+                {
+                    continue;
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                /* Not named after a hash code, so we can't tell, read it */
+            }
+
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), PROBE_BUFFER_SIZE)))
+            {
+                visitor.visit(in);
+            }
+            catch (NoSuchFileException e)
+            {
+                /* Removed since the folder was listed */
+            }
+        }
+    }
+
+    /**
+     * The content folders are scanned in parallel.
+     */
+    @Override
+    public void scan(Visitor visitor) throws IOException
+    {
+        File[] contentFolders = new File(this.folder).listFiles((File f) -> f.isDirectory() && f.getName().matches("[0-9a-fA-F]{2}"));
+        if (contentFolders == null)
+        {
+            return;
+        }
+
+        try
+        {
+            Arrays.stream(contentFolders).parallel().forEach((File contentFolder) ->
+            {
+                try
+                {
+                    scanFolder(contentFolder, visitor);
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+    }
+
+    private static void scanFolder(File contentFolder, Visitor visitor) throws IOException
+    {
+        File[] files = contentFolder.listFiles((File f) -> f.getName().endsWith(".kct"));
+        if (files == null)
+        {
+            return;
+        }
+
+        for (File file : files)
+        {
+            byte[] data;
+            try
+            {
+                data = Files.readAllBytes(file.toPath());
+            }
+            catch (NoSuchFileException e)
+            {
+                /* Removed since the folder was listed */
+                continue;
+            }
+            visitor.visit(data);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        /* Every entry is written out as it is stored, nothing to do here */
+    }
+
+    /**
+     * @return The file in which an entry is stored
+     */
+    private File getFile(KademliaId key, int hashCode)
+    {
+        return new File(this.getContentStorageFolderName(key) + File.separator + hashCode + ".kct");
+    }
+
+    /**
+     * Get the name of the folder for which a content should be stored
+     *
+     * @param key The key of the content
+     *
+     * @return String The name of the folder
+     */
+    private String getContentStorageFolderName(KademliaId key)
+    {
+        String folderName = key.hexRepresentation().substring(0, 2);
+        File contentStorageFolder = new File(this.folder + File.separator + folderName);
+
+        /* Create the content folder if it doesn't exist */
+        if (!contentStorageFolder.isDirectory())
+        {
+            contentStorageFolder.mkdir();
+        }
+
+        return contentStorageFolder.toString();
+    }
+}
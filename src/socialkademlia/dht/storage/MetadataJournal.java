@@ -0,0 +1,453 @@
+package socialkademlia.dht.storage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import socialkademlia.dht.SocialKademliaStorageEntryMetadata;
+import socialkademlia.util.io.AtomicFiles;
+import socialkademlia.util.io.SyncScheduler;
+import socialkademlia.util.serializer.SnapshotFormat;
+import socialkademlia.util.serializer.StorageEntrySerializer;
+
+/**
+ * A write-ahead log of the changes to the DHT's index of stored content, with periodic checkpoints of the whole index.
+ *
+ * Every change to the index is appended to the journal as it's made, so the index can be recovered after a crash.
+ * To keep the journal short, a checkpoint of the whole index is written from time to time:
+ * the journal is moved aside and a new one started, the index is written to the checkpoint file,
+ * and once it's complete the old journal is deleted.
+ *
+ * Recovery loads the checkpoint, then replays the old journal if a checkpoint was cut short, then the journal.
+ * The journal can also be opened for new changes first, with the index recovered in the background meanwhile.
+ * Replaying is idempotent: a put replaces the entry and removing a missing entry does nothing,
+ * so changes made while a checkpoint is written can safely be both in the checkpoint and in the journal.
+ *
+ * Record format: type (1 byte), metadata length (int), metadata in binary form, CRC32 of all the previous fields (int).
+ * A record that was cut short by a crash is dropped from the end of the journal.
+ * Logging a change only writes it; when writes are synced, awaitSync waits for the changes logged to be synced, and the syncs of concurrent changes are shared.
+ * So a change can be logged while it's applied under a lock, keeping the journal in the order of the changes, and synced once the lock is released.
+ *
+ * @author Joshua Kissoon
+ * @since 20140622
+ */
+public class MetadataJournal
+{
+
+    /* A checkpoint is due once the journal is larger than this */
+    public static final long CHECKPOINT_SIZE = 16L * 1024 * 1024;
+
+    private static final int MAGIC = 0x534B4350;    // "SKCP"
+
+    private static final String JOURNAL_FILE = "dht.journal";
+    private static final String OLD_JOURNAL_FILE = "dht.journal.old";
+    private static final String CHECKPOINT_FILE = "dht.checkpoint";
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_REMOVE = 2;
+
+    private static final int HEADER_LENGTH = 1 + 4;
+    private static final int TRAILER_LENGTH = 4;
+
+    private final File folder;
+    private final boolean sync;
+    private FileChannel channel;
+    private long size;
+
+    /* Only one checkpoint is written at a time */
+    private final Object checkpointLock = new Object();
+
+    /**
+     * How recovered changes are applied to the index
+     */
+    public interface Replay
+    {
+
+        public void put(SocialKademliaStorageEntryMetadata md);
+
+        public void remove(SocialKademliaStorageEntryMetadata md);
+    }
+
+    /**
+     * @param folder The folder the journal and checkpoint are kept in
+     */
+    public MetadataJournal(String folder)
+    {
+        this(folder, false);
+    }
+
+    /**
+     * @param folder The folder the journal and checkpoint are kept in
+     * @param sync   Whether changes and checkpoints are synced to disk before they're reported done
+     */
+    public MetadataJournal(String folder, boolean sync)
+    {
+        this.folder = new File(folder);
+        this.sync = sync;
+    }
+
+    /**
+     * @return Whether a checkpoint has been written; if so, the recovered index replaces the index as it is
+     */
+    public boolean hasCheckpoint()
+    {
+        return new File(this.folder, CHECKPOINT_FILE).exists();
+    }
+
+    /**
+     * Recover the index from the checkpoint and journal, then open the journal for new changes.
+     *
+     * @param replay Where the recovered changes are applied
+     *
+     * @throws java.io.IOException
+     */
+    public synchronized void recover(Replay replay) throws IOException
+    {
+        this.ensureFolder();
+        this.replayCheckpoint(replay);
+
+        File old = new File(this.folder, OLD_JOURNAL_FILE);
+        if (old.exists())
+        {
+            replayJournal(old, replay);
+        }
+
+        File journal = new File(this.folder, JOURNAL_FILE);
+        long valid = journal.exists() ? replayJournal(journal, replay) : 0;
+
+        this.channel = FileChannel.open(journal.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        truncate(this.channel, valid, journal);
+        this.channel.position(valid);
+        this.size = valid;
+    }
+
+    /**
+     * Open the journal for new changes straight away, leaving the index to be recovered later by replay(Replay).
+     *
+     * The records already in the journal are set aside with the old journal, so they're replayed after the checkpoint
+     * and the changes made from now on are kept apart from them.
+     *
+     * @throws java.io.IOException
+     */
+    public synchronized void open() throws IOException
+    {
+        this.ensureFolder();
+
+        File journal = new File(this.folder, JOURNAL_FILE);
+        if (journal.exists())
+        {
+            /* Drop any incomplete record first, since more records may be added after it when it's set aside */
+            long valid = replayJournal(journal, null);
+            try (FileChannel c = FileChannel.open(journal.toPath(), StandardOpenOption.WRITE))
+            {
+                truncate(c, valid, journal);
+            }
+            this.setAside(journal);
+        }
+
+        this.channel = FileChannel.open(journal.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.size = 0;
+    }
+
+    /**
+     * Recover the index from the checkpoint and the records set aside by open(), while new changes are journaled.
+     *
+     * No checkpoint may be written until the recovered index is complete; one should be written then, to merge the records set aside.
+     *
+     * @param replay Where the recovered changes are applied
+     *
+     * @throws java.io.IOException
+     */
+    public void replay(Replay replay) throws IOException
+    {
+        this.replayCheckpoint(replay);
+
+        File old = new File(this.folder, OLD_JOURNAL_FILE);
+        if (old.exists())
+        {
+            replayJournal(old, replay);
+        }
+    }
+
+    private void ensureFolder()
+    {
+        if (!this.folder.isDirectory())
+        {
+            this.folder.mkdirs();
+        }
+    }
+
+    private void replayCheckpoint(Replay replay) throws IOException
+    {
+        File checkpoint = new File(this.folder, CHECKPOINT_FILE);
+        if (checkpoint.exists())
+        {
+            try (SnapshotFormat.Reader r = SnapshotFormat.read(new FileInputStream(checkpoint), MAGIC))
+            {
+                while (r.readUnsignedByte() == RECORD_PUT)
+                {
+                    replay.put(StorageEntrySerializer.readMetadata(r));
+                }
+                r.finish();
+            }
+        }
+    }
+
+    private static void truncate(FileChannel c, long valid, File journal) throws IOException
+    {
+        if (c.size() > valid)
+        {
+            System.err.println("Dropping " + (c.size() - valid) + " bytes of incomplete records from the end of " + journal);
+            c.truncate(valid);
+        }
+    }
+
+    /**
+     * Replay the records of a journal
+     *
+     * @param replay Where the records are applied, or null to only check them
+     *
+     * @return The length of the valid records at the start of the journal
+     */
+    private static long replayJournal(File journal, Replay replay) throws IOException
+    {
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal))))
+        {
+            CRC32 crc = new CRC32();
+            while (true)
+            {
+                byte type;
+                byte[] body;
+                try
+                {
+                    type = in.readByte();
+                    int length = in.readInt();
+                    if (length < 0 || length > journal.length())
+                    {
+                        break;
+                    }
+                    body = new byte[length];
+                    in.readFully(body);
+
+                    crc.reset();
+                    crc.update(type);
+                    crc.update(length >>> 24);
+                    crc.update(length >>> 16);
+                    crc.update(length >>> 8);
+                    crc.update(length);
+                    crc.update(body, 0, length);
+                    if ((int) crc.getValue() != in.readInt())
+                    {
+                        break;
+                    }
+                }
+                catch (EOFException e)
+                {
+                    break;
+                }
+
+                if (type != RECORD_PUT && type != RECORD_REMOVE)
+                {
+                    break;
+                }
+
+                if (replay != null)
+                {
+                    SocialKademliaStorageEntryMetadata md = StorageEntrySerializer.readMetadata(new DataInputStream(new ByteArrayInputStream(body)));
+                    if (type == RECORD_PUT)
+                    {
+                        replay.put(md);
+                    }
+                    else
+                    {
+                        replay.remove(md);
+                    }
+                }
+
+                valid += HEADER_LENGTH + body.length + TRAILER_LENGTH;
+            }
+        }
+
+        return valid;
+    }
+
+    /**
+     * Log that an entry was added to the index, or that it's metadata changed; see awaitSync
+     *
+     * @param md The entry
+     *
+     * @throws java.io.IOException
+     */
+    public void logPut(SocialKademliaStorageEntryMetadata md) throws IOException
+    {
+        this.append(RECORD_PUT, md);
+    }
+
+    /**
+     * Log that an entry was removed from the index; see awaitSync
+     *
+     * @param md The entry
+     *
+     * @throws java.io.IOException
+     */
+    public void logRemove(SocialKademliaStorageEntryMetadata md) throws IOException
+    {
+        this.append(RECORD_REMOVE, md);
+    }
+
+    private void append(byte type, SocialKademliaStorageEntryMetadata md) throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bout);
+        out.writeByte(type);
+        out.writeInt(0);    // the length, filled in below
+        StorageEntrySerializer.writeMetadata(md, out);
+        out.writeInt(0);    // the CRC, filled in below
+
+        byte[] record = bout.toByteArray();
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        int length = record.length - HEADER_LENGTH - TRAILER_LENGTH;
+        buffer.putInt(1, length);
+
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, HEADER_LENGTH + length);
+        buffer.putInt(HEADER_LENGTH + length, (int) crc.getValue());
+
+        synchronized (this)
+        {
+            if (this.channel == null)
+            {
+                throw new IOException("The metadata journal is not open");
+            }
+            while (buffer.hasRemaining())
+            {
+                this.channel.write(buffer);
+            }
+            this.size += record.length;
+        }
+    }
+
+    /**
+     * Wait for the changes logged so far to be synced to disk, if changes are synced
+     *
+     * @throws java.io.IOException
+     */
+    public void awaitSync() throws IOException
+    {
+        if (!this.sync)
+        {
+            return;
+        }
+
+        /* A journal set aside by a checkpoint since was forced before it was closed */
+        FileChannel written;
+        synchronized (this)
+        {
+            written = this.channel;
+        }
+
+        if (written != null)
+        {
+            SyncScheduler.shared().syncChannel(written);
+        }
+    }
+
+    /**
+     * @return Whether the journal has grown enough for a checkpoint to be due
+     */
+    public synchronized boolean isCheckpointDue()
+    {
+        return this.size > CHECKPOINT_SIZE;
+    }
+
+    /**
+     * Write a checkpoint of the whole index and start a new journal
+     *
+     * @param entries The entries of the index; changes made while they're iterated must be logged
+     *
+     * @throws java.io.IOException
+     */
+    public void checkpoint(Iterable<SocialKademliaStorageEntryMetadata> entries) throws IOException
+    {
+        synchronized (this.checkpointLock)
+        {
+            File journal = new File(this.folder, JOURNAL_FILE);
+            File old = new File(this.folder, OLD_JOURNAL_FILE);
+
+            /* Move the journal aside and start a new one */
+            synchronized (this)
+            {
+                if (this.channel == null)
+                {
+                    throw new IOException("The metadata journal is not open");
+                }
+                /* Changes waiting for the journal to be synced are answered by this force once it's closed */
+                if (this.sync)
+                {
+                    this.channel.force(false);
+                }
+                this.channel.close();
+                this.setAside(journal);
+                this.channel = FileChannel.open(journal.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                this.size = 0;
+            }
+
+            /* Write the checkpoint atomically, so a checkpoint cut short never replaces the last complete one */
+            AtomicFiles.write(new File(this.folder, CHECKPOINT_FILE), (DataOutputStream out) ->
+            {
+                SnapshotFormat.Writer w = SnapshotFormat.write(out, MAGIC);
+                for (SocialKademliaStorageEntryMetadata md : entries)
+                {
+                    w.writeByte(RECORD_PUT);
+                    StorageEntrySerializer.writeMetadata(md, w);
+                }
+                w.writeByte(0);
+                w.finish();
+            }, this.sync);
+
+            Files.delete(old.toPath());
+        }
+    }
+
+    /**
+     * Move the journal to the old journal; if an earlier checkpoint failed the old journal is still needed, so add to it
+     */
+    private void setAside(File journal) throws IOException
+    {
+        File old = new File(this.folder, OLD_JOURNAL_FILE);
+        if (old.exists())
+        {
+            try (FileOutputStream out = new FileOutputStream(old, true))
+            {
+                Files.copy(journal.toPath(), out);
+            }
+            Files.delete(journal.toPath());
+        }
+        else
+        {
+            Files.move(journal.toPath(), old.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    public synchronized void close() throws IOException
+    {
+        if (this.channel != null)
+        {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+}
@@ -0,0 +1,1007 @@
+package socialkademlia.dht.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.zip.CRC32;
+import kademlia.node.KademliaId;
+import socialkademlia.util.io.SyncScheduler;
+
+/**
+ * Stores entries by appending them to large segment files, instead of keeping a file per entry.
+ *
+ * Every put appends a record with the entry, and every remove appends a tombstone record;
+ * an in-memory index keeps the location of the live record of each entry and is rebuilt by scanning the segments when the store is opened.
+ * A tombstone is live for as long as a segment at or before it still holds a record of the entry it removed,
+ * since the record would come back when the index is rebuilt; once those records are compacted away the tombstone is dropped as well.
+ * Once the active segment reaches SEGMENT_SIZE it is sealed and a new segment is started.
+ * Sealed segments are never written to again, so they are memory mapped and entries in them are read straight from the mapping.
+ * When writes are synced, a put or remove waits for the active segment to be synced; the syncs of concurrent writes are shared.
+ * Sealed segments that mostly hold replaced or removed entries are compacted in the background
+ * by copying their live records to the active segment and deleting them.
+ * A segment found to hold records that can't be read is never compacted, so what's left of it is kept for a closer look.
+ *
+ * Record format: type (1 byte), key, metadata hash code (int), data length (int), data, CRC32 of all the previous fields (long).
+ *
+ * @author Joshua Kissoon
+ * @since 20140613
+ */
+public class SegmentContentStore implements ContentStore
+{
+
+    /* Once the active segment is larger than this, it is sealed and a new segment is started */
+    public static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    /* A sealed segment is compacted once less than this fraction of it holds live records */
+    public static final double COMPACTION_THRESHOLD = 0.5;
+
+    private static final String SEGMENT_EXTENSION = ".seg";
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_DELETE = 2;
+
+    private static final int KEY_LENGTH = KademliaId.ID_LENGTH / 8;
+    private static final int HEADER_LENGTH = 1 + KEY_LENGTH + 4 + 4;
+    private static final int TRAILER_LENGTH = 8;
+
+    /* Compaction is done on a single background thread shared by all stores in this JVM */
+    private static final ExecutorService compactor;
+
+    static
+    {
+        compactor = Executors.newSingleThreadExecutor((Runnable r) ->
+        {
+            Thread t = new Thread(r, "SocialKademlia-SegmentCompactor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private final File folder;
+    private final boolean sync;
+
+    /* The segments by their id, oldest first; the last segment is the active segment */
+    private final TreeMap<Long, Segment> segments;
+
+    /* The location of the live record of each entry */
+    private final Map<IndexKey, Location> index;
+
+    /* The location of the live tombstone of each removed entry */
+    private final Map<IndexKey, Location> tombstones;
+
+    /* Reads hold the read lock; appends, index changes and deleting segments hold the write lock */
+    private final ReentrantReadWriteLock lock;
+
+    private final AtomicBoolean compactionScheduled;
+
+    private Segment active;
+    private volatile boolean closed;
+
+
+    {
+        segments = new TreeMap<>();
+        index = new HashMap<>();
+        tombstones = new HashMap<>();
+        lock = new ReentrantReadWriteLock();
+        compactionScheduled = new AtomicBoolean(false);
+        closed = false;
+    }
+
+    /**
+     * Open the store, rebuilding the index from the segments already in the folder.
+     *
+     * @param folder The folder in which to keep the segment files
+     *
+     * @throws java.io.IOException
+     */
+    public SegmentContentStore(String folder) throws IOException
+    {
+        this(folder, false);
+    }
+
+    /**
+     * Open the store, rebuilding the index from the segments already in the folder.
+     *
+     * @param folder The folder in which to keep the segment files
+     * @param sync   Whether records are synced to disk before a put or remove returns
+     *
+     * @throws java.io.IOException
+     */
+    public SegmentContentStore(String folder, boolean sync) throws IOException
+    {
+        this.folder = new File(folder);
+        this.sync = sync;
+        if (!this.folder.isDirectory())
+        {
+            this.folder.mkdirs();
+        }
+
+        this.recover();
+        this.scheduleCompaction();
+    }
+
+    @Override
+    public void put(KademliaId key, int hashCode, byte[] data) throws IOException
+    {
+        ByteBuffer record = encode(RECORD_PUT, key, hashCode, data);
+
+        FileChannel written;
+        lock.writeLock().lock();
+        try
+        {
+            this.ensureOpen();
+            Location loc = this.append(record, true);
+            IndexKey k = new IndexKey(key, hashCode);
+            this.markDead(k, this.index.put(k, loc));
+            this.retireTombstone(k);
+            written = this.segments.get(loc.segmentId).channel;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        this.sync(written);
+        this.scheduleCompaction();
+    }
+
+    @Override
+    public byte[] get(KademliaId key, int hashCode) throws FileNotFoundException, IOException
+    {
+        ByteBuffer view = this.getBuffer(key, hashCode);
+
+        /* Entries in the active segment are already read into an array of their own */
+        if (view.hasArray())
+        {
+            return view.array();
+        }
+
+        byte[] data = new byte[view.remaining()];
+        view.get(data);
+        return data;
+    }
+
+    @Override
+    public ByteBuffer getBuffer(KademliaId key, int hashCode) throws FileNotFoundException, IOException
+    {
+        lock.readLock().lock();
+        try
+        {
+            this.ensureOpen();
+            Location loc = this.index.get(new IndexKey(key, hashCode));
+            if (loc == null)
+            {
+                throw new FileNotFoundException("No content stored for key " + key.hexRepresentation() + " and hash code " + hashCode);
+            }
+
+            Segment segment = this.segments.get(loc.segmentId);
+            if (segment.mapped != null)
+            {
+                /* Records in sealed segments were checked when they were written or recovered */
+                ByteBuffer view = segment.mapped.duplicate();
+                int start = (int) loc.offset + HEADER_LENGTH;
+                view.position(start);
+                view.limit(start + loc.length - HEADER_LENGTH - TRAILER_LENGTH);
+                return view.slice();
+            }
+
+            Record record = readRecord(segment.channel, loc.offset);
+            if (record == null)
+            {
+                throw new IOException("Corrupt record in segment " + loc.segmentId + " at offset " + loc.offset);
+            }
+
+            return ByteBuffer.wrap(record.data);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(KademliaId key, int hashCode) throws IOException
+    {
+        FileChannel written;
+        lock.writeLock().lock();
+        try
+        {
+            this.ensureOpen();
+            IndexKey k = new IndexKey(key, hashCode);
+            Location old = this.index.remove(k);
+            if (old == null)
+            {
+                return false;
+            }
+
+            this.markDead(k, old);
+
+            /* The tombstone hides the removed record when the index is rebuilt */
+            Location loc = this.append(encode(RECORD_DELETE, key, hashCode, new byte[0]), true);
+            this.tombstones.put(k, loc);
+            written = this.segments.get(loc.segmentId).channel;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        this.sync(written);
+        this.scheduleCompaction();
+        return true;
+    }
+
+    /**
+     * The index knows the key of every entry, so only the entries stored under the key are visited.
+     */
+    @Override
+    public void probe(KademliaId key, IntPredicate known, HeaderVisitor visitor) throws IOException
+    {
+        for (IndexKey k : this.indexKeys(key))
+        {
+            if (!known.test(k.hashCode))
+            {
+                this.visit(k, (byte[] data) -> visitor.visit(new DataInputStream(new ByteArrayInputStream(data))));
+            }
+        }
+    }
+
+    /**
+     * The entries are read in parallel.
+     */
+    @Override
+    public void scan(Visitor visitor) throws IOException
+    {
+        List<IndexKey> keys = this.indexKeys(null);
+        try
+        {
+            keys.parallelStream().forEach((IndexKey k) ->
+            {
+                try
+                {
+                    this.visit(k, visitor);
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+    }
+
+    private void visit(IndexKey k, Visitor visitor) throws IOException
+    {
+        byte[] data;
+        try
+        {
+            data = this.get(k.key, k.hashCode);
+        }
+        catch (FileNotFoundException e)
+        {
+            /* Removed since the index was read */
+            return;
+        }
+        visitor.visit(data);
+    }
+
+    /**
+     * @param key The key of the entries, or null for every entry
+     *
+     * @return The index keys of the entries stored under the key
+     */
+    private List<IndexKey> indexKeys(KademliaId key)
+    {
+        lock.readLock().lock();
+        try
+        {
+            List<IndexKey> keys = new ArrayList<>();
+            for (IndexKey k : this.index.keySet())
+            {
+                if (key == null || k.key.equals(key))
+                {
+                    keys.add(k);
+                }
+            }
+            return keys;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if (this.closed)
+            {
+                return;
+            }
+            this.closed = true;
+
+            this.active.channel.force(true);
+            for (Segment s : this.segments.values())
+            {
+                s.channel.close();
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of entries in this store
+     */
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return this.index.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if (this.closed)
+        {
+            throw new IOException("The segment store has been closed");
+        }
+    }
+
+    /**
+     * Scan all segments in order to rebuild the index.
+     *
+     * A record that was only partly written when the node went down is cut off the end of the last segment.
+     * Records that can't be read anywhere else are skipped over to the next record that can, and are never cut off;
+     * a sealed segment is complete, so unreadable records in it are damage rather than a write cut short.
+     */
+    private void recover() throws IOException
+    {
+        List<Long> ids = new ArrayList<>();
+        File[] files = this.folder.listFiles();
+        if (files != null)
+        {
+            for (File f : files)
+            {
+                String name = f.getName();
+                if (name.endsWith(SEGMENT_EXTENSION))
+                {
+                    try
+                    {
+                        ids.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_EXTENSION.length())));
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        /* Not one of our segments */
+                    }
+                }
+            }
+        }
+        Collections.sort(ids);
+
+        for (long id : ids)
+        {
+            Segment segment = this.openSegment(id);
+            this.segments.put(id, segment);
+            boolean isLast = id == ids.get(ids.size() - 1);
+
+            long position = 0;
+            long end = segment.channel.size();
+            while (position < end)
+            {
+                Record record = readRecord(segment.channel, position);
+                if (record == null)
+                {
+                    long next = findRecord(segment.channel, position + 1, end);
+                    if (next < 0 && isLast)
+                    {
+                        System.err.println("Truncating incomplete record at the end of segment " + id + ", offset " + position);
+                        segment.channel.truncate(position);
+                        end = position;
+                        break;
+                    }
+
+                    segment.damaged = true;
+                    if (next < 0)
+                    {
+                        System.err.println("Unreadable records at the end of sealed segment " + id + " from offset " + position + ", keeping them as they are");
+                        break;
+                    }
+
+                    System.err.println("Skipping unreadable records in segment " + id + " from offset " + position + " to " + next);
+                    position = next;
+                    continue;
+                }
+
+                IndexKey k = new IndexKey(record.key, record.hashCode);
+                Location loc = new Location(id, position, record.length);
+                if (record.type == RECORD_PUT)
+                {
+                    this.markDead(k, this.index.put(k, loc));
+                    this.retireTombstone(k);
+                }
+                else
+                {
+                    this.markDead(k, this.index.remove(k));
+                    this.retireTombstone(k);
+                    this.tombstones.put(k, loc);
+                }
+                segment.liveBytes += record.length;
+                position += record.length;
+            }
+
+            segment.size = end;
+        }
+
+        /* Tombstones copied forward by compaction outlive the records they removed if those were compacted away since */
+        List<IndexKey> retired = new ArrayList<>();
+        for (Map.Entry<IndexKey, Location> e : this.tombstones.entrySet())
+        {
+            if (!this.hasDeadRecord(e.getKey(), e.getValue().segmentId))
+            {
+                retired.add(e.getKey());
+            }
+        }
+        for (IndexKey k : retired)
+        {
+            this.retireTombstone(k);
+        }
+
+        if (this.segments.isEmpty() || this.segments.lastEntry().getValue().size >= SEGMENT_SIZE)
+        {
+            this.startSegment();
+        }
+        else
+        {
+            this.active = this.segments.lastEntry().getValue();
+        }
+
+        for (Segment s : this.segments.values())
+        {
+            if (s != this.active)
+            {
+                seal(s);
+            }
+        }
+    }
+
+    private Segment openSegment(long id) throws IOException
+    {
+        File file = new File(this.folder, id + SEGMENT_EXTENSION);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Segment(id, file, channel);
+    }
+
+    /**
+     * Map a segment that will no longer be written to
+     */
+    private static void seal(Segment s) throws IOException
+    {
+        s.channel.force(false);
+        s.mapped = s.channel.map(FileChannel.MapMode.READ_ONLY, 0, s.size);
+    }
+
+    /**
+     * Start a new active segment
+     */
+    private void startSegment() throws IOException
+    {
+        long id = this.segments.isEmpty() ? 0 : this.segments.lastKey() + 1;
+        this.active = this.openSegment(id);
+        this.segments.put(id, this.active);
+
+        if (this.sync)
+        {
+            SyncScheduler.shared().syncFolder(this.folder.toPath());
+        }
+    }
+
+    /**
+     * Wait for a segment written to be synced, if writes are synced; a sealed or closed segment was forced already
+     */
+    private void sync(FileChannel written) throws IOException
+    {
+        if (this.sync)
+        {
+            SyncScheduler.shared().syncChannel(written);
+        }
+    }
+
+    /**
+     * Append a record to the active segment; the write lock must be held.
+     *
+     * @param record The encoded record
+     * @param isLive Whether the record is the live record of an entry
+     *
+     * @return The location of the record
+     */
+    private Location append(ByteBuffer record, boolean isLive) throws IOException
+    {
+        int length = record.remaining();
+        long position = this.active.size;
+        while (record.hasRemaining())
+        {
+            position += this.active.channel.write(record, position);
+        }
+
+        Location loc = new Location(this.active.id, this.active.size, length);
+        this.active.size += length;
+        if (isLive)
+        {
+            this.active.liveBytes += length;
+        }
+
+        if (this.active.size >= SEGMENT_SIZE)
+        {
+            seal(this.active);
+            this.startSegment();
+        }
+
+        return loc;
+    }
+
+    /**
+     * The record of an entry at the given location is no longer live; the write lock must be held.
+     */
+    private void markDead(IndexKey k, Location loc)
+    {
+        if (loc != null)
+        {
+            Segment s = this.segments.get(loc.segmentId);
+            if (s != null)
+            {
+                s.liveBytes -= loc.length;
+                s.deadRecords.add(k);
+            }
+        }
+    }
+
+    /**
+     * The entry's tombstone, if it has one, is no longer needed; the write lock must be held.
+     */
+    private void retireTombstone(IndexKey k)
+    {
+        Location loc = this.tombstones.remove(k);
+        if (loc != null)
+        {
+            Segment s = this.segments.get(loc.segmentId);
+            if (s != null)
+            {
+                s.liveBytes -= loc.length;
+            }
+        }
+    }
+
+    /**
+     * @param k    The entry
+     * @param upTo The id of the last segment to look in
+     *
+     * @return Whether a segment up to the given one holds a record of the entry that's not live; the lock must be held.
+     */
+    private boolean hasDeadRecord(IndexKey k, long upTo)
+    {
+        for (Segment s : this.segments.headMap(upTo, true).values())
+        {
+            if (s.deadRecords.contains(k))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return A sealed segment that needs compaction, or null if none does
+     */
+    private Segment compactionCandidate()
+    {
+        lock.readLock().lock();
+        try
+        {
+            for (Segment s : this.segments.values())
+            {
+                if (s != this.active && !s.damaged && s.liveBytes < s.size * COMPACTION_THRESHOLD)
+                {
+                    return s;
+                }
+            }
+
+            return null;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void scheduleCompaction()
+    {
+        if (!this.closed && this.compactionCandidate() != null && this.compactionScheduled.compareAndSet(false, true))
+        {
+            compactor.execute(this::compact);
+        }
+    }
+
+    /**
+     * Compact sealed segments until none need compaction
+     */
+    private void compact()
+    {
+        try
+        {
+            Segment victim;
+            while (!this.closed && (victim = this.compactionCandidate()) != null)
+            {
+                this.compactSegment(victim);
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Segment compaction failed. Message: " + e.getMessage());
+        }
+        finally
+        {
+            this.compactionScheduled.set(false);
+        }
+    }
+
+    /**
+     * Copy the live records of a sealed segment to the active segment then delete the segment.
+     * If a record of the segment can't be read, the segment is kept along with the records not copied as yet.
+     *
+     * Sealed segments are never written to, so the segment is read without holding the lock;
+     * the lock is only held while checking and moving each record.
+     */
+    private void compactSegment(Segment victim) throws IOException
+    {
+        long position = 0;
+        while (position < victim.size)
+        {
+            Record record = readRecord(victim.channel, position);
+            if (record == null)
+            {
+                System.err.println("Unreadable record in segment " + victim.id + " at offset " + position + ", not compacting the segment");
+                lock.writeLock().lock();
+                try
+                {
+                    victim.damaged = true;
+                }
+                finally
+                {
+                    lock.writeLock().unlock();
+                }
+                return;
+            }
+
+            IndexKey k = new IndexKey(record.key, record.hashCode);
+
+            lock.writeLock().lock();
+            try
+            {
+                this.ensureOpen();
+                Location current = this.index.get(k);
+                if (record.type == RECORD_PUT)
+                {
+                    /* Only copy the record if it's still the live record of this entry */
+                    if (current != null && current.segmentId == victim.id && current.offset == position)
+                    {
+                        Location loc = this.append(encode(RECORD_PUT, record.key, record.hashCode, record.data), true);
+                        this.index.put(k, loc);
+                        victim.liveBytes -= record.length;
+                    }
+                }
+                else
+                {
+                    /* Only copy the tombstone if it's still live, and an older segment still holds a record it removed */
+                    Location tombstone = this.tombstones.get(k);
+                    if (tombstone != null && tombstone.segmentId == victim.id && tombstone.offset == position)
+                    {
+                        if (this.hasDeadRecord(k, victim.id - 1))
+                        {
+                            Location loc = this.append(encode(RECORD_DELETE, record.key, record.hashCode, new byte[0]), true);
+                            this.tombstones.put(k, loc);
+                        }
+                        else
+                        {
+                            this.tombstones.remove(k);
+                        }
+                        victim.liveBytes -= record.length;
+                    }
+                }
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+
+            position += record.length;
+        }
+
+        lock.writeLock().lock();
+        try
+        {
+            this.ensureOpen();
+
+            /* Make sure the copied records are on disk before the originals go away */
+            this.active.channel.force(false);
+            this.segments.remove(victim.id);
+            victim.channel.close();
+            victim.file.delete();
+
+            /* The tombstones of records that were only left in this segment are no longer needed */
+            for (IndexKey k : victim.deadRecords)
+            {
+                Location tombstone = this.tombstones.get(k);
+                if (tombstone != null && !this.hasDeadRecord(k, tombstone.segmentId))
+                {
+                    this.retireTombstone(k);
+                }
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static ByteBuffer encode(byte type, KademliaId key, int hashCode, byte[] data)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_LENGTH + data.length + TRAILER_LENGTH);
+        buf.put(type);
+        buf.put(key.getBytes());
+        buf.putInt(hashCode);
+        buf.putInt(data.length);
+        buf.put(data);
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putLong(crc.getValue());
+
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Read the record at the given position of a segment
+     *
+     * @return The record, or null if there's no complete and valid record at this position
+     */
+    private static Record readRecord(FileChannel channel, long position) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        if (!readFully(channel, header, position))
+        {
+            return null;
+        }
+        header.flip();
+
+        byte type = header.get();
+        byte[] keyBytes = new byte[KEY_LENGTH];
+        header.get(keyBytes);
+        int hashCode = header.getInt();
+        int dataLength = header.getInt();
+
+        if ((type != RECORD_PUT && type != RECORD_DELETE) || dataLength < 0
+                || position + HEADER_LENGTH + dataLength + TRAILER_LENGTH > channel.size())
+        {
+            return null;
+        }
+
+        ByteBuffer rest = ByteBuffer.allocate(dataLength + TRAILER_LENGTH);
+        if (!readFully(channel, rest, position + HEADER_LENGTH))
+        {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, HEADER_LENGTH);
+        crc.update(rest.array(), 0, dataLength);
+        rest.position(dataLength);
+        if (rest.getLong() != crc.getValue())
+        {
+            return null;
+        }
+
+        byte[] data = new byte[dataLength];
+        System.arraycopy(rest.array(), 0, data, 0, dataLength);
+        return new Record(type, new KademliaId(keyBytes), hashCode, data, HEADER_LENGTH + dataLength + TRAILER_LENGTH);
+    }
+
+    /**
+     * Find the next record that can be read in part of a segment, i.e. after records that can't be read
+     *
+     * @param from The position from which to look
+     * @param end  The position at which to stop looking
+     *
+     * @return The position of the record, or -1 if there's none
+     */
+    private static long findRecord(FileChannel channel, long from, long end) throws IOException
+    {
+        if (from + HEADER_LENGTH + TRAILER_LENGTH > end)
+        {
+            return -1;
+        }
+
+        /* Only positions with a known type and a length that fits are worth checking the whole record at */
+        ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, from, end - from);
+        for (int i = 0; from + i + HEADER_LENGTH + TRAILER_LENGTH <= end; i++)
+        {
+            byte type = region.get(i);
+            if (type != RECORD_PUT && type != RECORD_DELETE)
+            {
+                continue;
+            }
+
+            int dataLength = region.getInt(i + 1 + KEY_LENGTH + 4);
+            if (dataLength >= 0 && from + i + HEADER_LENGTH + dataLength + TRAILER_LENGTH <= end && readRecord(channel, from + i) != null)
+            {
+                return from + i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return false if the end of the channel was reached before the buffer was filled
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException
+    {
+        while (buf.hasRemaining())
+        {
+            int read = channel.read(buf, position + buf.position());
+            if (read < 0)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * A segment file
+     */
+    private static class Segment
+    {
+
+        private final long id;
+        private final File file;
+        private final FileChannel channel;
+
+        /* Bytes written to this segment, and bytes of the live records in it */
+        private long size;
+        private long liveBytes;
+
+        /* Whether some records in the segment can't be read */
+        private boolean damaged;
+
+        /* The entries of which this segment holds records that are no longer live */
+        private final Set<IndexKey> deadRecords;
+
+        /* The mapping of the segment once it's sealed */
+        private MappedByteBuffer mapped;
+
+        public Segment(long id, File file, FileChannel channel)
+        {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.size = 0;
+            this.liveBytes = 0;
+            this.damaged = false;
+            this.deadRecords = new HashSet<>();
+            this.mapped = null;
+        }
+    }
+
+    /**
+     * Where a record is stored
+     */
+    private static class Location
+    {
+
+        private final long segmentId;
+        private final long offset;
+        private final int length;
+
+        public Location(long segmentId, long offset, int length)
+        {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A record read from a segment
+     */
+    private static class Record
+    {
+
+        private final byte type;
+        private final KademliaId key;
+        private final int hashCode;
+        private final byte[] data;
+        private final int length;
+
+        public Record(byte type, KademliaId key, int hashCode, byte[] data, int length)
+        {
+            this.type = type;
+            this.key = key;
+            this.hashCode = hashCode;
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The key of an entry in the index
+     */
+    private static class IndexKey
+    {
+
+        private final KademliaId key;
+        private final int hashCode;
+
+        public IndexKey(KademliaId key, int hashCode)
+        {
+            this.key = key;
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof IndexKey))
+            {
+                return false;
+            }
+
+            IndexKey other = (IndexKey) o;
+            return this.hashCode == other.hashCode && this.key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(this.key, this.hashCode);
+        }
+    }
+}
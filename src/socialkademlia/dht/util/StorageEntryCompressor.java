@@ -1,9 +1,14 @@
 package socialkademlia.dht.util;
 
 import java.io.IOException;
+import java.util.Arrays;
 import socialkademlia.dht.JSocialKademliaStorageEntry;
 import socialkademlia.dht.SocialKademliaStorageEntry;
-import socialkademlia.util.StringCompressor;
+import socialkademlia.util.compression.CompressionCodec;
+import socialkademlia.util.compression.CompressionCodecs;
+import socialkademlia.util.compression.CompressionSettings;
+import socialkademlia.util.compression.DictionaryDeflateCodec;
+import socialkademlia.util.compression.NoCompressionCodec;
 
 /**
  * Class that handles compression of storage entries.
@@ -11,38 +16,73 @@ import socialkademlia.util.StringCompressor;
  * In the storage entry, it doesn't make sense to constantly compress all of the data and decompress it,
  * so we only compress the content part.
  *
+ * The codec used is chosen by the type of the content, see CompressionSettings; the codec's id is recorded in the entry.
+ * Content is only compressed if it's worth it: content too small to outweigh the codec's framing and content that is already compressed, like images,
+ * are stored as is, recorded as compressed with NoCompressionCodec. How small is too small depends on the codec,
+ * so short posts are still compressed with codecs that add little, like the dictionary codec.
+ *
  * @author Joshua Kissoon
  * @since 20140511
  */
 public class StorageEntryCompressor
 {
 
+    /* For content larger than this, a sample is compressed first to find out if the content is compressible */
+    public static final int SAMPLE_THRESHOLD = 8 * 1024;
+    public static final int SAMPLE_SIZE = 2 * 1024;
+
+    /* Content is stored uncompressed unless compression gets it below this fraction of it's size */
+    public static final double MAX_COMPRESSION_RATIO = 0.9;
+
     /**
-     * Compress a given storage entry.
+     * Compress a given storage entry with the codec for it's content type.
      *
      * We only compress the content part of the storage entry.
      *
+     * @param entry    The entry whose content is to be compressed
+     * @param settings The compression settings of the node
+     *
+     * @return The entry with compressed content
+     *
+     * @throws java.io.IOException
+     */
+    public static JSocialKademliaStorageEntry compress(final JSocialKademliaStorageEntry entry, final CompressionSettings settings) throws IOException
+    {
+        return compress(entry, settings.forType(entry.getContentMetadata().getType()));
+    }
+
+    /**
+     * Compress a given storage entry with the given codec.
+     *
      * @param entry The entry whose content is to be compressed
+     * @param codec The codec to compress the content with
      *
      * @return The entry with compressed content
      *
      * @throws java.io.IOException
      */
-    public static JSocialKademliaStorageEntry compress(final JSocialKademliaStorageEntry entry) throws IOException
+    public static JSocialKademliaStorageEntry compress(final JSocialKademliaStorageEntry entry, final CompressionCodec codec) throws IOException
     {
-        if (entry.isCompressed())
+        if (entry.isCompressed() || codec.id() == NoCompressionCodec.ID || !isWorthCompressing(entry.getContent(), codec))
         {
             return entry;
         }
 
         try
         {
-            entry.setContent(StringCompressor.compress(entry.getContent()));
-            entry.setCompressed();
+            byte[] content = entry.getContent();
+            byte[] compressed = codec.compress(content);
+
+            /* The entry stays uncompressed if compression didn't save enough to pay for decompressing it */
+            if (compressed.length <= content.length * MAX_COMPRESSION_RATIO)
+            {
+                entry.setContent(compressed);
+                entry.setCompressed(codec.id());
+            }
         }
         catch (IOException ex)
         {
-            System.err.println("Error whiles decompressing entry.");
+            System.err.println("Error whiles compressing entry.");
             System.err.println("Entry: " + entry);
             System.err.println("Error: " + ex.getMessage());
             throw new IOException(ex.getMessage());
@@ -50,18 +90,47 @@ public class StorageEntryCompressor
         return entry;
     }
 
+    /**
+     * Check whether some content is worth compressing: it's large enough to save more than the codec's framing costs
+     * and, if it's large, a sample of it compresses well.
+     *
+     * @param content The content
+     * @param codec   The codec that would compress it
+     *
+     * @return Whether to compress the content
+     */
+    private static boolean isWorthCompressing(byte[] content, CompressionCodec codec) throws IOException
+    {
+        /* Even if it compressed to nothing, the framing alone would miss the ratio */
+        if (content.length * MAX_COMPRESSION_RATIO < codec.overhead())
+        {
+            return false;
+        }
+
+        if (content.length <= SAMPLE_THRESHOLD)
+        {
+            return true;
+        }
+
+        /* Sample the middle of the content, the start is more likely to be a header that compresses well */
+        int start = (content.length - SAMPLE_SIZE) / 2;
+        byte[] sample = Arrays.copyOfRange(content, start, start + SAMPLE_SIZE);
+        return codec.compress(sample).length <= sample.length * MAX_COMPRESSION_RATIO;
+    }
+
     /**
      * Decompress a given storage entry.
      *
      * We only decompress the content part of the storage entry.
      *
      * @param entry
+     * @param settings The compression settings of the node, holding the dictionaries the content may have been compressed with
      *
      * @return
      *
      * @throws java.io.IOException
      */
-    public static JSocialKademliaStorageEntry decompress(final JSocialKademliaStorageEntry entry) throws IOException
+    public static JSocialKademliaStorageEntry decompress(final JSocialKademliaStorageEntry entry, final CompressionSettings settings) throws IOException
     {
         if (!entry.isCompressed())
         {
@@ -69,7 +138,15 @@ public class StorageEntryCompressor
         }
         try
         {
-            entry.setContent(StringCompressor.decompress(entry.getContentString()));
+            CompressionCodec codec = CompressionCodecs.get(entry.getCompressionCodec());
+            if (codec instanceof DictionaryDeflateCodec)
+            {
+                entry.setContent(((DictionaryDeflateCodec) codec).decompress(entry.getContent(), settings.getDictionaries()));
+            }
+            else
+            {
+                entry.setContent(codec.decompress(entry.getContent()));
+            }
             entry.setDecompressed();
         }
         catch (IOException ex)
@@ -6,11 +6,13 @@ import java.io.IOException;
 import kademlia.message.Message;
 import socialkademlia.dht.GetParameterFUC;
 import kademlia.node.Node;
-import kademlia.util.serializer.JsonSerializer;
+import socialkademlia.util.serializer.Serializers;
 
 /**
  * Messages used to send to another node requesting a newer version of a content that the node already has.
  *
+ * The parameters are sent as JSON or in binary form; the message code tells the receiver which one it is.
+ *
  * @author Joshua Kissoon
  * @since 20140419
  */
@@ -18,22 +20,47 @@ public class ContentLookupMessageFUC implements Message
 {
 
     public static final byte CODE = 0x29;
+    public static final byte BINARY_CODE = 0x2C;
 
     private Node origin;
     private GetParameterFUC params;
+    private final boolean binary;
 
     /**
      * @param origin The node where this lookup came from
      * @param params The parameters used to find the content
      */
     public ContentLookupMessageFUC(Node origin, GetParameterFUC params)
+    {
+        this(origin, params, false);
+    }
+
+    /**
+     * @param origin The node where this lookup came from
+     * @param params The parameters used to find the content
+     * @param binary Whether to send the parameters in binary form
+     */
+    public ContentLookupMessageFUC(Node origin, GetParameterFUC params, boolean binary)
     {
         this.origin = origin;
         this.params = params;
+        this.binary = binary;
     }
 
     public ContentLookupMessageFUC(DataInputStream in) throws IOException
     {
+        this(in, false);
+    }
+
+    /**
+     * @param in     The stream to read the message from
+     * @param binary Whether the message was received with the binary code
+     *
+     * @throws java.io.IOException
+     */
+    public ContentLookupMessageFUC(DataInputStream in, boolean binary) throws IOException
+    {
+        this.binary = binary;
         this.fromStream(in);
     }
 
@@ -47,13 +74,28 @@ public class ContentLookupMessageFUC implements Message
         return this.origin;
     }
 
+    /**
+     * @return Whether the message was sent in binary form, in which case the sender reads replies in binary form as well
+     */
+    public boolean isBinary()
+    {
+        return this.binary;
+    }
+
     @Override
     public void toStream(DataOutputStream out) throws IOException
     {
         this.origin.toStream(out);
 
         /* Write the params to the stream */
-        new JsonSerializer<GetParameterFUC>().write(this.params, out);
+        if (this.binary)
+        {
+            this.params.toStream(out);
+        }
+        else
+        {
+            Serializers.<GetParameterFUC>json().write(this.params, out);
+        }
     }
 
     @Override
@@ -62,9 +104,15 @@ public class ContentLookupMessageFUC implements Message
         this.origin = new Node(in);
 
         /* Read the params from the stream */
+        if (this.binary)
+        {
+            this.params = GetParameterFUC.fromStream(in);
+            return;
+        }
+
         try
         {
-            this.params = new JsonSerializer<GetParameterFUC>().read(in);
+            this.params = Serializers.<GetParameterFUC>json().read(in);
         }
         catch (ClassNotFoundException e)
         {
@@ -75,7 +123,7 @@ public class ContentLookupMessageFUC implements Message
     @Override
     public byte code()
     {
-        return CODE;
+        return this.binary ? BINARY_CODE : CODE;
     }
 
 }
@@ -45,8 +45,8 @@ public class ContentLookupReceiver implements Receiver
         {
             try
             {
-                /* Return a ContentMessage with the required data */
-                ContentMessage cMsg = new ContentMessage(localNode.getNode(), this.dht.get(msg.getParameters()));
+                /* Return a ContentMessage with the required data; content lookups are only sent as JSON, so the content is sent as JSON too */
+                ContentMessage cMsg = new ContentMessage(localNode.getNode(), this.dht.getSerialized(msg.getParameters()), false);
                 server.reply(msg.getOrigin(), cMsg, comm);
             }
             catch (NoSuchElementException ex)
@@ -7,9 +7,8 @@ import kademlia.KadServer;
 import kademlia.message.Message;
 import kademlia.message.NodeLookupMessage;
 import kademlia.message.Receiver;
-import socialkademlia.dht.JSocialKademliaStorageEntry;
 import socialkademlia.dht.SocialKademliaDHT;
-import socialkademlia.dht.SocialKademliaStorageEntry;
+import socialkademlia.dht.SocialKademliaStorageEntryMetadata;
 
 /**
  * Responds to a ContentLookupMessage for updated content by sending a ContentLookupMessageFUC containing the requested content information;
@@ -43,17 +42,18 @@ public class ContentLookupReceiverFUC implements Receiver
         /* Check if we can have this data */
         if (this.dht.contains(msg.getParameters()))
         {
-            /* Return a ContentMessage with the required data if it's a newer version */
-            JSocialKademliaStorageEntry se = this.dht.get(msg.getParameters());
+            /* Return a ContentMessage with the required data if it's a newer version; the content is only loaded if we send it */
+            SocialKademliaStorageEntryMetadata md = this.dht.getStorageEntryMetadata(msg.getParameters());
 
             /* Only if this node is one of the K-Closest or the owner, we return the content */
-            if (se.getContentMetadata().isKNode() || se.getContentMetadata().getOwnerId().equals(localNode.getOwnerId()))
+            if (md.isKNode() || md.getOwnerId().equals(localNode.getOwnerId()))
             {
                 Message cMsg;
                 
-                if (se.getContentMetadata().getLastUpdatedTimestamp() > msg.getParameters().getLastUpdatedTimestamp())
+                if (md.getLastUpdatedTimestamp() > msg.getParameters().getLastUpdatedTimestamp())
                 {
-                    cMsg = new ContentMessage(localNode.getNode(), se);
+                    /* Reply in the form the lookup was sent in, which is a form the sender reads */
+                    cMsg = new ContentMessage(localNode.getNode(), this.dht.getSerialized(msg.getParameters()), msg.isBinary());
                 }
                 else
                 {
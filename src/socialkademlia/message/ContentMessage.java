@@ -1,16 +1,23 @@
 package socialkademlia.message;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import kademlia.message.Message;
 import kademlia.node.Node;
-import kademlia.util.serializer.JsonSerializer;
 import socialkademlia.dht.JSocialKademliaStorageEntry;
+import socialkademlia.util.serializer.Serializers;
+import socialkademlia.util.serializer.StorageEntrySerializer;
 
 /**
  * A Message used to send content between nodes
  *
+ * The content is sent with it's metadata in JSON or in binary form; the message code tells the receiver which one it is.
+ * The JSON form is the one nodes that don't know the binary form read, under the code they know.
+ *
  * @author Joshua Kissoon
  * @since 20140226
  */
@@ -18,9 +25,14 @@ public class ContentMessage implements Message
 {
 
     public static final byte CODE = 0x04;
+    public static final byte BINARY_CODE = 0x2A;
 
     private JSocialKademliaStorageEntry content;
     private Node origin;
+    private final boolean binary;
+
+    /* The content already in it's serialized form, as read from the local storage */
+    private ByteBuffer serializedContent;
 
     /**
      * @param origin  Where the message came from
@@ -28,13 +40,51 @@ public class ContentMessage implements Message
      *
      */
     public ContentMessage(Node origin, JSocialKademliaStorageEntry content)
+    {
+        this(origin, content, false);
+    }
+
+    /**
+     * @param origin  Where the message came from
+     * @param content The content to be stored
+     * @param binary  Whether to send the content in binary form
+     */
+    public ContentMessage(Node origin, JSocialKademliaStorageEntry content, boolean binary)
     {
         this.content = content;
         this.origin = origin;
+        this.binary = binary;
+    }
+
+    /**
+     * Create a message for content that's already serialized, the serialized content is sent as is
+     * unless it's not in the JSON form and the message is not binary.
+     *
+     * @param origin            Where the message came from
+     * @param serializedContent The storage entry in a form written by the StorageEntrySerializer
+     * @param binary            Whether to send the content in binary form
+     */
+    public ContentMessage(Node origin, ByteBuffer serializedContent, boolean binary)
+    {
+        this.serializedContent = serializedContent;
+        this.origin = origin;
+        this.binary = binary;
     }
 
     public ContentMessage(DataInputStream in) throws IOException
     {
+        this(in, false);
+    }
+
+    /**
+     * @param in     The stream to read the message from
+     * @param binary Whether the message was received with the binary code
+     *
+     * @throws java.io.IOException
+     */
+    public ContentMessage(DataInputStream in, boolean binary) throws IOException
+    {
+        this.binary = binary;
         this.fromStream(in);
     }
 
@@ -43,8 +93,32 @@ public class ContentMessage implements Message
     {
         this.origin.toStream(out);
 
+        /* A receiver of the JSON form can't read the binary form, so the content is rewritten */
+        if (this.serializedContent != null && !this.binary
+                && this.serializedContent.get(this.serializedContent.position()) != StorageEntrySerializer.JSON_FORMAT)
+        {
+            this.getContent();
+            this.serializedContent = null;
+        }
+
+        if (this.serializedContent != null)
+        {
+            /* The stored form of the content is what the StorageEntrySerializer would write, send it straight to the stream */
+            ByteBuffer data = this.serializedContent.duplicate();
+            if (data.hasArray())
+            {
+                out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            }
+            else
+            {
+                Channels.newChannel(out).write(data);
+            }
+            out.flush();
+            return;
+        }
+
         /* Serialize the KadContent, then send it to the stream */
-        new JsonSerializer<JSocialKademliaStorageEntry>().write(content, out);
+        Serializers.storageEntry(this.binary).write(content, out);
     }
 
     @Override
@@ -54,7 +128,7 @@ public class ContentMessage implements Message
 
         try
         {
-            this.content = new JsonSerializer<JSocialKademliaStorageEntry>().read(in);
+            this.content = Serializers.storageEntry(this.binary).read(in);
         }
         catch (ClassNotFoundException e)
         {
@@ -69,18 +143,32 @@ public class ContentMessage implements Message
 
     public JSocialKademliaStorageEntry getContent()
     {
+        if (this.content == null && this.serializedContent != null)
+        {
+            byte[] data = new byte[this.serializedContent.remaining()];
+            this.serializedContent.duplicate().get(data);
+            try
+            {
+                this.content = Serializers.storageEntry(this.binary).read(new DataInputStream(new ByteArrayInputStream(data)));
+            }
+            catch (IOException | ClassNotFoundException e)
+            {
+                System.err.println("Error when reading serialized StorageEntry; Message: " + e.getMessage());
+            }
+        }
+
         return this.content;
     }
 
     @Override
     public byte code()
     {
-        return CODE;
+        return this.binary ? BINARY_CODE : CODE;
     }
 
     @Override
     public String toString()
     {
-        return "ContentMessage[origin=" + origin + ",content=" + content + "]";
+        return "ContentMessage[origin=" + origin + ",content=" + this.getContent() + "]";
     }
 }
@@ -48,6 +48,8 @@ public class MessageFactory implements KademliaMessageFactory
                 return new ConnectMessage(in);
             case ContentMessage.CODE:
                 return new ContentMessage(in);
+            case ContentMessage.BINARY_CODE:
+                return new ContentMessage(in, true);
             case ContentLookupMessage.CODE:
                 return new ContentLookupMessage(in);
             case NodeLookupMessage.CODE:
@@ -58,8 +60,12 @@ public class MessageFactory implements KademliaMessageFactory
                 return new SimpleMessage(in);
             case StoreContentMessage.CODE:
                 return new StoreContentMessage(in);
+            case StoreContentMessage.BINARY_CODE:
+                return new StoreContentMessage(in, true);
             case ContentLookupMessageFUC.CODE:
                 return new ContentLookupMessageFUC(in);
+            case ContentLookupMessageFUC.BINARY_CODE:
+                return new ContentLookupMessageFUC(in, true);
             case UpToDateContentMessage.CODE:
                 return new UpToDateContentMessage(in);
             default:
@@ -81,8 +87,10 @@ public class MessageFactory implements KademliaMessageFactory
             case NodeLookupMessage.CODE:
                 return new NodeLookupReceiver(server, this.localNode, this.config);
             case StoreContentMessage.CODE:
+            case StoreContentMessage.BINARY_CODE:
                 return new StoreContentReceiver(server, this.localNode, this.dht);
             case ContentLookupMessageFUC.CODE:
+            case ContentLookupMessageFUC.BINARY_CODE:
                 return new ContentLookupReceiverFUC(server, this.localNode, this.dht, this.config);
             default:
                 //System.out.println("No receiver found for message. Code: " + code);
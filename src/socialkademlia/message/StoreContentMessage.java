@@ -5,12 +5,14 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import kademlia.message.Message;
 import kademlia.node.Node;
-import kademlia.util.serializer.JsonSerializer;
 import socialkademlia.dht.JSocialKademliaStorageEntry;
+import socialkademlia.util.serializer.Serializers;
 
 /**
  * A StoreContentMessage used to send a store message to a node
  *
+ * The content is sent with it's metadata in JSON or in binary form; the message code tells the receiver which one it is.
+ *
  * @author Joshua Kissoon
  * @since 20140225
  */
@@ -18,9 +20,11 @@ public class StoreContentMessage implements Message
 {
 
     public static final byte CODE = 0x08;
+    public static final byte BINARY_CODE = 0x2B;
 
     private JSocialKademliaStorageEntry content;
     private Node origin;
+    private final boolean binary;
 
     /**
      * @param origin  Where the message came from
@@ -28,13 +32,36 @@ public class StoreContentMessage implements Message
      *
      */
     public StoreContentMessage(Node origin, JSocialKademliaStorageEntry content)
+    {
+        this(origin, content, false);
+    }
+
+    /**
+     * @param origin  Where the message came from
+     * @param content The content to be stored
+     * @param binary  Whether to send the content in binary form
+     */
+    public StoreContentMessage(Node origin, JSocialKademliaStorageEntry content, boolean binary)
     {
         this.content = content;
         this.origin = origin;
+        this.binary = binary;
     }
 
     public StoreContentMessage(DataInputStream in) throws IOException
     {
+        this(in, false);
+    }
+
+    /**
+     * @param in     The stream to read the message from
+     * @param binary Whether the message was received with the binary code
+     *
+     * @throws java.io.IOException
+     */
+    public StoreContentMessage(DataInputStream in, boolean binary) throws IOException
+    {
+        this.binary = binary;
         this.fromStream(in);
     }
 
@@ -44,7 +71,7 @@ public class StoreContentMessage implements Message
         this.origin.toStream(out);
 
         /* Serialize the KadContent, then send it to the stream */
-        new JsonSerializer<JSocialKademliaStorageEntry>().write(content, out);
+        Serializers.storageEntry(this.binary).write(content, out);
     }
 
     @Override
@@ -53,7 +80,7 @@ public class StoreContentMessage implements Message
         this.origin = new Node(in);
         try
         {
-            this.content = new JsonSerializer<JSocialKademliaStorageEntry>().read(in);
+            this.content = Serializers.storageEntry(this.binary).read(in);
         }
         catch (ClassNotFoundException e)
         {
@@ -74,7 +101,7 @@ public class StoreContentMessage implements Message
     @Override
     public byte code()
     {
-        return CODE;
+        return this.binary ? BINARY_CODE : CODE;
     }
 
     @Override
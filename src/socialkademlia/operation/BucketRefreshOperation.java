@@ -1,11 +1,17 @@
 package socialkademlia.operation;
 
 import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import kademlia.KadConfiguration;
 import kademlia.KadServer;
 import socialkademlia.SocialKademliaNode;
 import kademlia.node.KademliaId;
 import kademlia.operation.Operation;
+import kademlia.routing.Contact;
+import kademlia.routing.KademliaBucket;
 
 /**
  * At each time interval t, nodes need to refresh their K-Buckets
@@ -17,6 +23,25 @@ import kademlia.operation.Operation;
 public class BucketRefreshOperation implements Operation
 {
 
+    /* How many refresh lookups can run at the same time; shared by all nodes running in this JVM */
+    public static final int MAX_CONCURRENT_LOOKUPS = 8;
+
+    private static final ExecutorService lookupExecutor;
+
+    /* Lookup targets that are queued or running, so that refreshes in quick succession don't pile up */
+    private static final Set<KademliaId> pendingLookups;
+
+    static
+    {
+        lookupExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_LOOKUPS, (Runnable r) ->
+        {
+            Thread t = new Thread(r, "SocialKademlia-BucketRefresh");
+            t.setDaemon(true);
+            return t;
+        });
+        pendingLookups = ConcurrentHashMap.newKeySet();
+    }
+
     private final KadServer server;
     private final SocialKademliaNode localNode;
     private final KadConfiguration config;
@@ -36,32 +61,77 @@ public class BucketRefreshOperation implements Operation
      * Then Do a NodeLookupOperation for each of the generated NodeIds,
      * This will find the K-Closest nodes to that ID, and update the necessary K-Bucket
      *
+     * Buckets with a contact seen within the last refresh interval don't need to be refreshed.
+     *
      * @throws java.io.IOException
      */
     @Override
     public synchronized void execute() throws IOException
     {
+        /* Contacts' last seen time is in seconds */
+        final long recentlySeen = (System.currentTimeMillis() - this.config.restoreInterval()) / 1000L;
+
         for (int i = 1; i < KademliaId.ID_LENGTH; i++)
         {
             /* Construct a NodeId that is i bits away from the current node Id */
             final KademliaId current = this.localNode.getNode().getNodeId().generateNodeIdByDistance(i);
 
-            /* Run the Node Lookup Operation, each in a different thread to speed up things */
-            new Thread()
+            if (this.isRecentlyTouched(current, recentlySeen))
+            {
+                continue;
+            }
+
+            /* A refresh lookup for this bucket is already waiting to run */
+            if (!pendingLookups.add(current))
+            {
+                continue;
+            }
+
+            /* Run the Node Lookup Operation on the shared executor, at most MAX_CONCURRENT_LOOKUPS run at a time */
+            lookupExecutor.execute(() ->
             {
-                @Override
-                public void run()
+                try
+                {
+                    new NodeLookupOperation(server, localNode, current, BucketRefreshOperation.this.config).execute();
+                }
+                catch (IOException e)
+                {
+                    //System.err.println("Bucket Refresh Operation Failed. Msg: " + e.getMessage());
+                }
+                finally
                 {
-                    try
-                    {
-                        new NodeLookupOperation(server, localNode, current, BucketRefreshOperation.this.config).execute();
-                    }
-                    catch (IOException e)
-                    {
-                        //System.err.println("Bucket Refresh Operation Failed. Msg: " + e.getMessage());
-                    }
+                    pendingLookups.remove(current);
                 }
-            }.start();
+            });
+        }
+    }
+
+    /**
+     * Check whether the bucket that a given identifier falls into has a contact that was seen recently.
+     *
+     * @param id    The identifier
+     * @param since The time in seconds after which a contact is considered as recently seen
+     *
+     * @return Whether the bucket has been touched since the given time
+     */
+    private boolean isRecentlyTouched(KademliaId id, long since)
+    {
+        KademliaBucket[] buckets = this.localNode.getRoutingTable().getBuckets();
+        int bucketId = this.localNode.getRoutingTable().getBucketId(id);
+
+        if (bucketId < 0 || bucketId >= buckets.length)
+        {
+            return false;
+        }
+
+        for (Contact c : buckets[bucketId].getContacts())
+        {
+            if (c.lastSeen() >= since)
+            {
+                return true;
+            }
         }
+
+        return false;
     }
 }
@@ -0,0 +1,210 @@
+package socialkademlia.operation;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import kademlia.dht.GetParameter;
+import kademlia.exceptions.ContentNotFoundException;
+import kademlia.node.KademliaId;
+import socialkademlia.SocialKadStatistician;
+import socialkademlia.dht.JSocialKademliaStorageEntry;
+
+/**
+ * Coalesces concurrent lookups for the same content into one lookup on the network.
+ *
+ * Lookups are keyed by the key, owner and type of the content; while a lookup is in flight,
+ * anyone else looking up the same content waits for it's result instead of starting another lookup.
+ * The lookup is forgotten as soon as it's done, so later lookups always go to the network again.
+ *
+ * Every caller gets the same entry, so callers that change the entry, i.e. by decompressing it, need to copy it first.
+ *
+ * @author Joshua Kissoon
+ * @since 20140626
+ */
+public class ContentLookupCoalescer
+{
+
+    private final ConcurrentHashMap<LookupKey, CompletableFuture<JSocialKademliaStorageEntry>> inFlight;
+    private final SocialKadStatistician statistician;
+
+
+    {
+        inFlight = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param statistician Where to record the lookups that were coalesced
+     */
+    public ContentLookupCoalescer(SocialKadStatistician statistician)
+    {
+        this.statistician = statistician;
+    }
+
+    /**
+     * Look up some content, or wait for the lookup already in flight for it
+     *
+     * @param param  The parameters used to search for the content
+     * @param lookup Does the lookup on the network, on the calling thread
+     *
+     * @return The content found
+     *
+     * @throws java.io.IOException
+     * @throws kademlia.exceptions.ContentNotFoundException
+     */
+    public JSocialKademliaStorageEntry lookup(GetParameter param, Lookup lookup) throws IOException, ContentNotFoundException
+    {
+        LookupKey key = new LookupKey(param);
+        CompletableFuture<JSocialKademliaStorageEntry> flight = new CompletableFuture<>();
+        CompletableFuture<JSocialKademliaStorageEntry> leader = this.inFlight.putIfAbsent(key, flight);
+        if (leader != null)
+        {
+            this.statistician.addCoalescedContentLookup();
+            return await(leader);
+        }
+
+        try
+        {
+            JSocialKademliaStorageEntry e = lookup.run();
+            this.inFlight.remove(key, flight);
+            flight.complete(e);
+            return e;
+        }
+        catch (Throwable ex)
+        {
+            this.inFlight.remove(key, flight);
+            flight.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Look up some content without blocking the calling thread, or share the lookup already in flight for it
+     *
+     * @param param  The parameters used to search for the content
+     * @param lookup Starts the lookup on the network
+     *
+     * @return A future completed with the content found
+     */
+    public CompletableFuture<JSocialKademliaStorageEntry> lookupAsync(GetParameter param, Supplier<CompletableFuture<JSocialKademliaStorageEntry>> lookup)
+    {
+        LookupKey key = new LookupKey(param);
+        CompletableFuture<JSocialKademliaStorageEntry> flight = new CompletableFuture<>();
+        CompletableFuture<JSocialKademliaStorageEntry> leader = this.inFlight.putIfAbsent(key, flight);
+        if (leader != null)
+        {
+            this.statistician.addCoalescedContentLookup();
+            return leader;
+        }
+
+        try
+        {
+            lookup.get().whenComplete((JSocialKademliaStorageEntry e, Throwable ex) ->
+            {
+                this.inFlight.remove(key, flight);
+                if (ex != null)
+                {
+                    flight.completeExceptionally(ex);
+                }
+                else
+                {
+                    flight.complete(e);
+                }
+            });
+        }
+        catch (RuntimeException ex)
+        {
+            this.inFlight.remove(key, flight);
+            flight.completeExceptionally(ex);
+        }
+
+        return flight;
+    }
+
+    /**
+     * @return The number of lookups in flight
+     */
+    public int numInFlight()
+    {
+        return this.inFlight.size();
+    }
+
+    /**
+     * Wait for a lookup in flight, throwing what the lookup threw
+     */
+    private static JSocialKademliaStorageEntry await(CompletableFuture<JSocialKademliaStorageEntry> flight) throws IOException, ContentNotFoundException
+    {
+        try
+        {
+            return flight.join();
+        }
+        catch (CompletionException ex)
+        {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            if (cause instanceof ContentNotFoundException)
+            {
+                throw (ContentNotFoundException) cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * A lookup on the network, done on the calling thread
+     */
+    public interface Lookup
+    {
+
+        public JSocialKademliaStorageEntry run() throws IOException, ContentNotFoundException;
+    }
+
+    /**
+     * The key, owner and type a lookup is for
+     */
+    private static final class LookupKey
+    {
+
+        private final KademliaId key;
+        private final String ownerId;
+        private final String type;
+
+        public LookupKey(GetParameter param)
+        {
+            this.key = param.getKey();
+            this.ownerId = param.getOwnerId();
+            this.type = param.getType();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof LookupKey))
+            {
+                return false;
+            }
+
+            LookupKey other = (LookupKey) o;
+            return this.key.equals(other.key) && Objects.equals(this.ownerId, other.ownerId) && Objects.equals(this.type, other.type);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(this.key, this.ownerId, this.type);
+        }
+    }
+}
@@ -2,14 +2,10 @@ package socialkademlia.operation;
 
 import kademlia.message.Receiver;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import kademlia.KadConfiguration;
 import kademlia.KadServer;
 import socialkademlia.dht.GetParameterFUC;
@@ -20,10 +16,10 @@ import socialkademlia.message.ContentLookupMessageFUC;
 import kademlia.message.Message;
 import kademlia.message.NodeReplyMessage;
 import socialkademlia.message.UpToDateContentMessage;
-import kademlia.node.KeyComparator;
 import kademlia.node.Node;
 import kademlia.operation.Operation;
 import kademlia.util.RouteLengthChecker;
+import socialkademlia.DefaultSocialKadConfiguration;
 import socialkademlia.SocialKademliaNode;
 import socialkademlia.dht.JSocialKademliaStorageEntry;
 import socialkademlia.dht.SocialKademliaStorageEntry;
@@ -38,12 +34,6 @@ import socialkademlia.message.ContentMessage;
 public class ContentLookupOperationFUC implements Operation, Receiver
 {
 
-    /* Constants */
-    private static final Byte UNASKED = (byte) 0x00;
-    private static final Byte AWAITING = (byte) 0x01;
-    private static final Byte ASKED = (byte) 0x02;
-    private static final Byte FAILED = (byte) 0x03;
-
     private final KadServer server;
     private final SocialKademliaNode localNode;
     private JSocialKademliaStorageEntry contentFound = null;
@@ -53,13 +43,20 @@ public class ContentLookupOperationFUC implements Operation, Receiver
 
     private boolean isContentFound;
     private boolean newerContentExist = false; // Whether the content we have is up to date
-    private final SortedMap<Node, Byte> nodes;
+    private final LookupShortlist shortlist;
 
     /* Tracks messages in transit and awaiting reply */
-    private final Map<Integer, Node> messagesTransiting;
+    private final LookupRequests requests;
+
+    /* How many more hedged requests we may send */
+    private int hedgesLeft;
+
+    /* Whether the operation is done; set when we run out of nodes to ask, find the content or hit the deadline */
+    private boolean isFinished;
 
-    /* Used to sort nodes */
-    private final Comparator comparator;
+    /* Completed when the operation finishes; used when the operation is started with executeAsync() */
+    private final CompletableFuture<ContentLookupOperationFUC> completion;
+    private ScheduledFuture<?> deadlineTask;
 
     /* Statistical information */
     private final RouteLengthChecker routeLengthChecker;
@@ -68,7 +65,8 @@ public class ContentLookupOperationFUC implements Operation, Receiver
 
     
     {
-        messagesTransiting = new HashMap<>();
+        isFinished = false;
+        completion = new CompletableFuture<>();
         isContentFound = false;
         routeLengthChecker = new RouteLengthChecker();
     }
@@ -82,7 +80,7 @@ public class ContentLookupOperationFUC implements Operation, Receiver
     public ContentLookupOperationFUC(KadServer server, SocialKademliaNode localNode, GetParameterFUC params, KadConfiguration config)
     {
         /* Construct our lookup message */
-        this.lookupMessage = new ContentLookupMessageFUC(localNode.getNode(), params);
+        this.lookupMessage = new ContentLookupMessageFUC(localNode.getNode(), params, DefaultSocialKadConfiguration.socialSettings(config).useBinaryMessages());
 
         this.server = server;
         this.localNode = localNode;
@@ -90,12 +88,12 @@ public class ContentLookupOperationFUC implements Operation, Receiver
 
         this.params = params;
 
-        /**
-         * We initialize a TreeMap to store nodes.
-         * This map will be sorted by which nodes are closest to the lookupId
-         */
-        this.comparator = new KeyComparator(params.getKey());
-        this.nodes = new TreeMap(this.comparator);
+        /* The nodes seen, sorted by which nodes are closest to the lookupId */
+        this.shortlist = new LookupShortlist(params.getKey(), config.k());
+
+        /* Messages are given timeouts worked out from the round trip times of the nodes they're sent to */
+        this.requests = new LookupRequests(localNode.getRoutingTable(), config.responseTimeout(), this::requestTimedOut);
+        this.hedgesLeft = DefaultSocialKadConfiguration.socialSettings(config).maxHedgedRequests();
     }
 
     /**
@@ -107,56 +105,99 @@ public class ContentLookupOperationFUC implements Operation, Receiver
     {
         try
         {
-            /* Set the local node as already asked */
-            nodes.put(this.localNode.getNode(), ASKED);
+            this.start();
 
             /**
-             * Check if we are a connection to the required content's owner and if we have it's node in our routing table
+             * If we haven't finished as yet, wait until we're notified that the operation is finished
+             * or for a maximum of config.operationTimeout() time
              */
-            if (this.localNode.getRoutingTable().containsConnection(this.params.getOwnerId()))
+            long timeLeft = TimeUnit.MILLISECONDS.toNanos(this.config.operationTimeout());
+            final long deadline = System.nanoTime() + timeLeft;
+            while (!this.isFinished && timeLeft > 0)
             {
-                Node connNode = this.localNode.getRoutingTable().getConnectionNode(this.params.getOwnerId());
-
-                /* We only contact the owner of the contact if this is not the owner */
-                if (!connNode.equals(this.localNode.getNode()))
-                {
-                    this.nodes.put(connNode, UNASKED);
-                }
+                TimeUnit.NANOSECONDS.timedWait(this, timeLeft);
+                timeLeft = deadline - System.nanoTime();
             }
 
-            /**
-             * We add all nodes here instead of the K-Closest because there may be the case that the K-Closest are offline
-             * - The operation takes care of looking at the K-Closest.
-             */
-            List<Node> allNodes = this.localNode.getRoutingTable().getAllNodes();
-            this.addNodes(allNodes);
+            /* Replies that come in after the deadline should not cause any more messages to be sent */
+            this.finish();
+        }
+        catch (InterruptedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
 
-            /* Also add the initial set of nodes to the routeLengthChecker */
-            this.routeLengthChecker.addInitialNodes(allNodes);
+    /**
+     * Start the operation without waiting for it to finish.
+     *
+     * @return A future that is completed with this operation once it has finished or config.operationTimeout() time has expired
+     *
+     * @throws java.io.IOException
+     */
+    public synchronized CompletableFuture<ContentLookupOperationFUC> executeAsync() throws IOException
+    {
+        this.start();
 
-            /**
-             * If we haven't found the requested amount of content as yet,
-             * keey trying until config.operationTimeout() time has expired
-             */
-            int totalTimeWaited = 0;
-            int timeInterval = 10;     // We re-check every n milliseconds
-            while (totalTimeWaited < this.config.operationTimeout())
+        if (!this.isFinished)
+        {
+            this.deadlineTask = OperationScheduler.schedule(this::deadlineReached, this.config.operationTimeout());
+        }
+
+        return this.completion;
+    }
+
+    /**
+     * Add the initial set of nodes and send out the first set of messages,
+     * from here on replies and timeouts drive the operation.
+     */
+    private void start() throws IOException
+    {
+        /* Set the local node as already asked */
+        this.shortlist.set(this.localNode.getNode(), LookupShortlist.ASKED);
+
+        /**
+         * Check if we are a connection to the required content's owner and if we have it's node in our routing table
+         */
+        if (this.localNode.getRoutingTable().containsConnection(this.params.getOwnerId()))
+        {
+            Node connNode = this.localNode.getRoutingTable().getConnectionNode(this.params.getOwnerId());
+
+            /* We only contact the owner of the contact if this is not the owner */
+            if (!connNode.equals(this.localNode.getNode()))
             {
-                if (!this.askNodesorFinish() && !isContentFound)
-                {
-                    wait(timeInterval);
-                    totalTimeWaited += timeInterval;
-                }
-                else
-                {
-                    break;
-                }
+                this.shortlist.add(connNode);
             }
         }
-        catch (InterruptedException e)
+
+        /**
+         * We add the CONCURRENCY * K closest nodes here instead of the K-Closest because there may be the case that the K-Closest are offline
+         * - The operation takes care of looking at the K-Closest, and takes more nodes if these are exhausted by failures.
+         */
+        List<Node> seed = this.shortlist.seed(this.localNode.getRoutingTable(), this.config.maxConcurrentMessagesTransiting() * this.config.k());
+
+        /* Also add the initial set of nodes to the routeLengthChecker */
+        this.routeLengthChecker.addInitialNodes(seed);
+
+        /* If hedging is on, nodes that are slower to reply than most are hedged once we've seen enough replies to know what's slow */
+        if (this.hedgesLeft > 0)
         {
-            throw new RuntimeException(e);
+            long delay = this.localNode.getRoutingTable().getRoundTripTimePercentile(DefaultSocialKadConfiguration.socialSettings(this.config).hedgePercentile());
+            if (delay >= 0)
+            {
+                this.requests.hedgeAfter(delay, this::hedge);
+            }
         }
+
+        this.askNodesorFinish();
+    }
+
+    /**
+     * The operation was started asynchronously and config.operationTimeout() time has expired
+     */
+    private synchronized void deadlineReached()
+    {
+        this.finish();
     }
 
     /**
@@ -166,14 +207,8 @@ public class ContentLookupOperationFUC implements Operation, Receiver
      */
     public void addNodes(List<Node> list)
     {
-        for (Node o : list)
-        {
-            /* If this node is not in the list, add the node */
-            if (!nodes.containsKey(o))
-            {
-                nodes.put(o, UNASKED);
-            }
-        }
+        /* Nodes already in the shortlist keep their state */
+        this.shortlist.addAll(list);
     }
 
     /**
@@ -189,36 +224,47 @@ public class ContentLookupOperationFUC implements Operation, Receiver
      */
     private boolean askNodesorFinish() throws IOException
     {
+        if (this.isFinished)
+        {
+            return true;
+        }
+
         /* If >= CONCURRENCY nodes are in transit, don't do anything */
-        if (this.config.maxConcurrentMessagesTransiting() <= this.messagesTransiting.size())
+        if (this.config.maxConcurrentMessagesTransiting() <= this.requests.size())
         {
             return false;
         }
 
-        /* Get unqueried nodes among the K closest seen that have not FAILED */
-        List<Node> unasked = this.closestNodesNotFailed(UNASKED);
+        /* Get the unqueried node among the K closest seen that have not FAILED that should reply the soonest */
+        Node n = this.preferredUnasked();
 
-        if (unasked.isEmpty() && this.messagesTransiting.isEmpty())
+        if (n == null && !this.isWaiting())
         {
-            /* We have no unasked nodes nor any messages in transit, we're finished! */
-            return true;
+            /* The nodes we started with may have been exhausted by failures, take more from the routing table */
+            List<Node> seed = this.shortlist.expandSeed(this.localNode.getRoutingTable());
+            this.routeLengthChecker.addInitialNodes(seed);
+            n = this.preferredUnasked();
         }
 
-        /* Sort nodes according to criteria */
-        Collections.sort(unasked, this.comparator);
+        if (n == null && !this.isWaiting())
+        {
+            /* We have no unasked nodes nor any messages in transit or late replies that count, we're finished! */
+            this.finish();
+            return true;
+        }
 
         /**
-         * Send messages to nodes in the list;
+         * Send messages to the closest unasked nodes, those that reply quickest first;
          * making sure than no more than CONCURRENCY messsages are in transit
          */
-        for (int i = 0; (this.messagesTransiting.size() < this.config.maxConcurrentMessagesTransiting()) && (i < unasked.size()); i++)
+        while (n != null && this.requests.size() < this.config.maxConcurrentMessagesTransiting())
         {
-            Node n = (Node) unasked.get(i);
-
             int comm = server.sendMessage(n, lookupMessage, this);
 
-            this.nodes.put(n, AWAITING);
-            this.messagesTransiting.put(comm, n);
+            this.shortlist.set(n, LookupShortlist.AWAITING);
+            this.requests.sent(comm, n);
+
+            n = this.preferredUnasked();
         }
 
         /* We're not finished as yet, return false */
@@ -226,42 +272,54 @@ public class ContentLookupOperationFUC implements Operation, Receiver
     }
 
     /**
-     * Find The K closest nodes to the target lookupId given that have not FAILED.
-     * From those K, get those that have the specified status
-     *
-     * @param status The status of the nodes to return
-     *
-     * @return A List of the closest nodes
+     * @return Whether a message is in transit, or a late node's reply may still change the K closest nodes
      */
-    private List<Node> closestNodesNotFailed(Byte status)
+    private boolean isWaiting()
     {
-        List<Node> closestNodes = new ArrayList<>(this.config.k());
-        int remainingSpaces = this.config.k();
+        return !this.requests.isEmpty() || this.shortlist.hasLate(this.config.k());
+    }
 
-        for (Map.Entry e : this.nodes.entrySet())
+    /**
+     * @return The unasked node among the K closest seen that have not FAILED which we expect to reply the soonest
+     */
+    private Node preferredUnasked()
+    {
+        return this.shortlist.preferredUnasked(this.config.k(), (Node n) -> this.localNode.getRoutingTable().getResponseTimeout(n, this.config.responseTimeout()));
+    }
+
+    /**
+     * Mark this operation as finished; wakes up the thread waiting in execute() and completes the future returned by executeAsync()
+     */
+    private void finish()
+    {
+        if (this.isFinished)
         {
-            if (!FAILED.equals(e.getValue()))
-            {
-                if (status.equals(e.getValue()))
-                {
-                    /* We got one with the required status, now add it */
-                    closestNodes.add((Node) e.getKey());
-                }
-
-                if (--remainingSpaces == 0)
-                {
-                    break;
-                }
-            }
+            return;
         }
 
-        return closestNodes;
+        this.isFinished = true;
+        this.notifyAll();
+        this.requests.cancelTimeouts();
+
+        if (this.deadlineTask != null)
+        {
+            this.deadlineTask.cancel(false);
+        }
+        this.completion.complete(this);
     }
 
     @Override
     public synchronized void receive(Message incoming, int comm) throws IOException, RoutingException
     {
-        if (this.isContentFound)
+        /* Take in how long the node took to reply, even if we're done */
+        if (this.requests.isHedgeAhead(comm))
+        {
+            this.localNode.getStatistician().addHedgeWin();
+        }
+        this.requests.replied(comm);
+
+        /* We're done, either the content was found or the deadline has passed */
+        if (this.isFinished)
         {
             return;
         }
@@ -279,6 +337,7 @@ public class ContentLookupOperationFUC implements Operation, Receiver
             this.contentFound = content;
             this.isContentFound = true;
             this.newerContentExist = true;
+            this.finish();
         }
         else if (incoming instanceof UpToDateContentMessage)
         {
@@ -288,6 +347,7 @@ public class ContentLookupOperationFUC implements Operation, Receiver
              */
             this.newerContentExist = false;
             this.isContentFound = true;
+            this.finish();
         }
         else if (incoming instanceof NodeReplyMessage)
         {
@@ -299,10 +359,7 @@ public class ContentLookupOperationFUC implements Operation, Receiver
             this.localNode.getRoutingTable().insert(origin);
 
             /* Set that we've completed ASKing the origin node */
-            this.nodes.put(origin, ASKED);
-
-            /* Remove this msg from messagesTransiting since it's completed now */
-            this.messagesTransiting.remove(comm);
+            this.shortlist.set(origin, LookupShortlist.ASKED);
 
             /* Add the received nodes to the routeLengthChecker */
             this.routeLengthChecker.addNodes(msg.getNodes(), origin);
@@ -329,7 +386,7 @@ public class ContentLookupOperationFUC implements Operation, Receiver
     public synchronized void timeout(int comm) throws IOException
     {
         /* Get the node associated with this communication */
-        Node n = this.messagesTransiting.get(new Integer(comm));
+        Node n = this.requests.expired(comm);
 
         if (n == null)
         {
@@ -337,13 +394,76 @@ public class ContentLookupOperationFUC implements Operation, Receiver
         }
 
         /* Mark this node as failed and inform the routing table that it's unresponsive */
-        this.nodes.put(n, FAILED);
+        this.shortlist.set(n, LookupShortlist.FAILED);
         this.localNode.getRoutingTable().setUnresponsiveContact(n);
-        this.messagesTransiting.remove(comm);
 
         this.askNodesorFinish();
     }
 
+    /**
+     * A node has not replied within the hedge delay; we ask the next node as well, without waiting for the node to time out.
+     *
+     * @param comm
+     */
+    private synchronized void hedge(int comm)
+    {
+        if (this.isFinished || this.hedgesLeft <= 0 || !this.requests.isTransiting(comm))
+        {
+            return;
+        }
+
+        Node n = this.preferredUnasked();
+        if (n == null)
+        {
+            return;
+        }
+
+        try
+        {
+            int hedgeComm = this.server.sendMessage(n, this.lookupMessage, this);
+
+            this.shortlist.set(n, LookupShortlist.AWAITING);
+            this.requests.sentHedge(hedgeComm, n, comm);
+            this.hedgesLeft--;
+            this.localNode.getStatistician().addHedgedRequest();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error whiles sending a hedged request. Msg: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A node has not replied within the timeout worked out from it's round trip times;
+     * another node is asked in it's place, but we still take in it's reply if it comes before the KadServer gives up on it,
+     * and don't finish without it if it's among the K closest nodes.
+     *
+     * @param comm
+     */
+    private synchronized void requestTimedOut(int comm)
+    {
+        if (this.isFinished)
+        {
+            return;
+        }
+
+        Node n = this.requests.timedOut(comm);
+        if (n == null)
+        {
+            return;
+        }
+
+        this.shortlist.set(n, LookupShortlist.LATE);
+        try
+        {
+            this.askNodesorFinish();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error whiles asking more nodes after a node timed out. Msg: " + e.getMessage());
+        }
+    }
+
     /**
      * @return Whether the content was found or not.
      */
@@ -12,6 +12,7 @@ import kademlia.operation.Operation;
 import socialkademlia.SocialKademliaNode;
 import socialkademlia.dht.SocialKademliaDHT;
 import socialkademlia.dht.SocialKademliaStorageEntryMetadata;
+import socialkademlia.DefaultSocialKadConfiguration;
 
 /**
  * Refresh/Restore the data on this node by sending the data to the K-Closest nodes to the data
@@ -74,7 +75,7 @@ public class ContentRefreshOperation implements Operation
             List<Node> closestNodes = this.localNode.getRoutingTable().findClosest(e.getKey(), this.config.k());
 
             /* Create the message */
-            Message msg = new StoreContentMessage(this.localNode.getNode(), dht.get(e));
+            Message msg = new StoreContentMessage(this.localNode.getNode(), dht.get(e), DefaultSocialKadConfiguration.socialSettings(this.config).useBinaryMessages());
 
             /*Store the message on all of the K-Nodes*/
             for (Node n : closestNodes)
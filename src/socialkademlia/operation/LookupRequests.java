@@ -0,0 +1,287 @@
+package socialkademlia.operation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.IntConsumer;
+import kademlia.node.Node;
+import socialkademlia.routing.SocialKademliaRoutingTable;
+
+/**
+ * The messages a lookup operation has sent out and is waiting on replies to.
+ *
+ * Each message is given a timeout worked out from the round trip times of the node it was sent to.
+ * A message that passes it's timeout no longer takes up one of the lookup's CONCURRENCY slots, so a slow node doesn't stall the lookup;
+ * the message is kept as late though, since a reply may still come in before the KadServer gives up on it,
+ * and the lookup isn't done without that reply if the node is among the k closest nodes.
+ * The time each node takes to reply is fed back into the routing table.
+ *
+ * With hedging on, a message that's not been replied to within the hedge delay is handed back to the operation,
+ * so it can send the same request to another node without giving up on the first.
+ *
+ * Not thread safe; lookup operations only use it while holding their own lock.
+ *
+ * @author Joshua Kissoon
+ * @since 20140627
+ */
+class LookupRequests
+{
+
+    private final SocialKademliaRoutingTable routingTable;
+    private final long maxTimeout;
+    private final IntConsumer onTimeout;
+
+    /* Messages awaiting a reply within their timeout */
+    private final Map<Integer, Request> transiting;
+
+    /* Messages that passed their timeout, but that the KadServer hasn't given up on as yet */
+    private final Map<Integer, Request> late;
+
+    /* How long to wait for a reply before hedging a message, in milliseconds; hedging is off if negative */
+    private long hedgeDelay;
+    private IntConsumer onHedge;
+
+
+    {
+        transiting = new HashMap<>();
+        late = new HashMap<>();
+        hedgeDelay = -1;
+    }
+
+    /**
+     * @param routingTable The routing table that keeps the round trip times of nodes
+     * @param maxTimeout   The longest timeout, the one the KadServer uses; in milliseconds
+     * @param onTimeout    Called with the communication id of a message that passed it's timeout
+     */
+    public LookupRequests(SocialKademliaRoutingTable routingTable, long maxTimeout, IntConsumer onTimeout)
+    {
+        this.routingTable = routingTable;
+        this.maxTimeout = maxTimeout;
+        this.onTimeout = onTimeout;
+    }
+
+    /**
+     * Hedge the messages sent from now on
+     *
+     * @param delay   How long to wait for a reply before hedging a message, in milliseconds
+     * @param onHedge Called with the communication id of a message that's not been replied to within the delay
+     */
+    public void hedgeAfter(long delay, IntConsumer onHedge)
+    {
+        this.hedgeDelay = delay;
+        this.onHedge = onHedge;
+    }
+
+    /**
+     * A message was sent to a node
+     *
+     * @param comm The communication id of the message
+     * @param node The node
+     */
+    public void sent(int comm, Node node)
+    {
+        this.sent(comm, node, null);
+    }
+
+    /**
+     * The same request as another message was sent to another node, since the other node was slow to reply
+     *
+     * @param comm    The communication id of the message
+     * @param node    The node
+     * @param hedgeOf The communication id of the message hedged
+     */
+    public void sentHedge(int comm, Node node, int hedgeOf)
+    {
+        this.sent(comm, node, hedgeOf);
+    }
+
+    private void sent(int comm, Node node, Integer hedgeOf)
+    {
+        Request r = new Request(node, hedgeOf);
+
+        /* No need to schedule a timeout the KadServer times out at anyway */
+        long timeout = this.routingTable.getResponseTimeout(node, this.maxTimeout);
+        if (timeout < this.maxTimeout)
+        {
+            r.timeoutTask = OperationScheduler.schedule(() -> this.onTimeout.accept(comm), timeout);
+        }
+
+        if (this.hedgeDelay >= 0 && this.hedgeDelay < timeout)
+        {
+            r.hedgeTask = OperationScheduler.schedule(() -> this.onHedge.accept(comm), this.hedgeDelay);
+        }
+
+        this.transiting.put(comm, r);
+    }
+
+    /**
+     * A reply was received to a message, whether it was late or not
+     *
+     * @param comm The communication id of the message
+     *
+     * @return The node the message was sent to, or null if it's not a message we're waiting on
+     */
+    public Node replied(int comm)
+    {
+        Request r = this.remove(comm);
+        if (r == null)
+        {
+            return null;
+        }
+
+        this.routingTable.addRoundTripTime(r.node, System.nanoTime() - r.sentTime);
+        return r.node;
+    }
+
+    /**
+     * A message passed the timeout it was given
+     *
+     * @param comm The communication id of the message
+     *
+     * @return The node the message was sent to, or null if the message is no longer awaiting a reply within it's timeout
+     */
+    public Node timedOut(int comm)
+    {
+        Request r = this.transiting.remove(comm);
+        if (r == null)
+        {
+            return null;
+        }
+
+        /* The node is no longer waited on, so there's no need to hedge it */
+        r.cancelHedge();
+
+        this.late.put(comm, r);
+        this.routingTable.addResponseTimeout(r.node);
+        return r.node;
+    }
+
+    /**
+     * The KadServer gave up on a message
+     *
+     * @param comm The communication id of the message
+     *
+     * @return The node the message was sent to, or null if it's not a message we're waiting on
+     */
+    public Node expired(int comm)
+    {
+        boolean wasLate = this.late.containsKey(comm);
+        Request r = this.remove(comm);
+        if (r == null)
+        {
+            return null;
+        }
+
+        if (!wasLate)
+        {
+            this.routingTable.addResponseTimeout(r.node);
+        }
+        return r.node;
+    }
+
+    /**
+     * @param comm The communication id of a message
+     *
+     * @return Whether the message is awaiting a reply within it's timeout
+     */
+    public boolean isTransiting(int comm)
+    {
+        return this.transiting.containsKey(comm);
+    }
+
+    /**
+     * @param comm The communication id of a message
+     *
+     * @return Whether the message is a hedge, and the message it hedged has not been replied to as yet
+     */
+    public boolean isHedgeAhead(int comm)
+    {
+        Request r = this.transiting.get(comm);
+        if (r == null)
+        {
+            r = this.late.get(comm);
+        }
+
+        return r != null && r.hedgeOf != null && (this.transiting.containsKey(r.hedgeOf) || this.late.containsKey(r.hedgeOf));
+    }
+
+    /**
+     * @return The number of messages awaiting a reply within their timeout
+     */
+    public int size()
+    {
+        return this.transiting.size();
+    }
+
+    /**
+     * @return Whether no message is awaiting a reply within it's timeout
+     */
+    public boolean isEmpty()
+    {
+        return this.transiting.isEmpty();
+    }
+
+    /**
+     * Cancel the timeouts and hedges of all messages; done when the operation finishes.
+     * Replies that still come in are taken in as round trip times.
+     */
+    public void cancelTimeouts()
+    {
+        for (Request r : this.transiting.values())
+        {
+            r.cancel();
+        }
+    }
+
+    private Request remove(int comm)
+    {
+        Request r = this.transiting.remove(comm);
+        if (r == null)
+        {
+            r = this.late.remove(comm);
+        }
+
+        if (r != null)
+        {
+            r.cancel();
+        }
+        return r;
+    }
+
+    /**
+     * A message sent to a node
+     */
+    private static class Request
+    {
+
+        private final Node node;
+        private final long sentTime;
+        private final Integer hedgeOf;
+        private ScheduledFuture<?> timeoutTask;
+        private ScheduledFuture<?> hedgeTask;
+
+        public Request(Node node, Integer hedgeOf)
+        {
+            this.node = node;
+            this.sentTime = System.nanoTime();
+            this.hedgeOf = hedgeOf;
+        }
+
+        public void cancel()
+        {
+            if (this.timeoutTask != null)
+            {
+                this.timeoutTask.cancel(false);
+            }
+            this.cancelHedge();
+        }
+
+        public void cancelHedge()
+        {
+            if (this.hedgeTask != null)
+            {
+                this.hedgeTask.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package socialkademlia.operation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToLongFunction;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+import socialkademlia.routing.SocialKademliaRoutingTable;
+
+/**
+ * The nodes seen by a lookup operation and the state of each, sorted by their distance to the lookup target.
+ *
+ * The XOR distance of each node to the target is computed once when the node is added, and kept as unsigned longs
+ * in an array alongside the nodes and a byte per node for it's state, so keeping the nodes sorted and walking them
+ * doesn't compute distances or allocate. Only the closest CAPACITY_FACTOR * k nodes are kept;
+ * nodes farther than all of those are never asked by a lookup anyway. When the shortlist is full, a failed node
+ * makes space before any other does, so failures don't crowd out the nodes still worth asking.
+ *
+ * A node that's not replied within the timeout worked out from it's round trip times is LATE; it's passed over like a failed node
+ * when picking nodes to ask, so another node is asked in it's place, but a lookup isn't done while a late node is among the k closest.
+ *
+ * A lookup is seeded with the closest nodes in the routing table rather than every node in it;
+ * more are only taken from the routing table if the seed is exhausted by failures before k nodes answered.
+ *
+ * Not thread safe; lookup operations only use it while holding their own lock.
+ *
+ * @author Joshua Kissoon
+ * @since 20140624
+ */
+public class LookupShortlist
+{
+
+    /* Node states */
+    public static final byte UNASKED = 0;
+    public static final byte AWAITING = 1;
+    public static final byte ASKED = 2;
+    public static final byte FAILED = 3;
+    public static final byte LATE = 4;
+
+    /* The shortlist keeps at most this many times k nodes */
+    public static final int CAPACITY_FACTOR = 4;
+
+    private final KademliaId targetId;
+    private final byte[] target;
+    private final int k;
+
+    /* The number of longs each distance takes */
+    private final int words;
+
+    private final Node[] nodes;
+    private final long[] distances;
+    private final byte[] states;
+    private int size;
+
+    /* The distance of the node being added or looked up, so no array is allocated for it */
+    private final long[] probe;
+
+    /* The number of closest nodes taken from the routing table, and whether it had no more */
+    private int seedSize;
+    private boolean seedExhausted;
+
+    /**
+     * @param target The ID the lookup is for
+     * @param k      The number of closest nodes the lookup is after
+     */
+    public LookupShortlist(KademliaId target, int k)
+    {
+        this.targetId = target;
+        this.target = target.getBytes();
+        this.k = k;
+        this.words = (this.target.length + 7) / 8;
+
+        int capacity = CAPACITY_FACTOR * k;
+        this.nodes = new Node[capacity];
+        this.distances = new long[capacity * this.words];
+        this.states = new byte[capacity];
+        this.size = 0;
+        this.probe = new long[this.words];
+    }
+
+    /**
+     * Seed the shortlist with the closest nodes to the target in the routing table
+     *
+     * @param table The routing table
+     * @param size  The number of closest nodes to take; no more than the shortlist can hold are taken
+     *
+     * @return The nodes taken from the routing table
+     */
+    public List<Node> seed(SocialKademliaRoutingTable table, int size)
+    {
+        this.seedSize = Math.min(size, this.nodes.length);
+        return this.takeSeed(table);
+    }
+
+    /**
+     * Once a lookup has run out of nodes to ask, check whether the nodes it was seeded with were exhausted by failures
+     * before k of them answered; if so, take more of the closest nodes from the routing table until there's a node to ask.
+     *
+     * @param table The routing table
+     *
+     * @return The nodes taken from the routing table; empty if none were needed or the routing table has no more
+     */
+    public List<Node> expandSeed(SocialKademliaRoutingTable table)
+    {
+        while (!this.seedExhausted && this.closest(ASKED, this.k).size() < this.k)
+        {
+            this.seedSize *= 2;
+            List<Node> seed = this.takeSeed(table);
+            if (this.closestUnasked(this.k) != null)
+            {
+                return seed;
+            }
+        }
+
+        return Collections.emptyList();
+    }
+
+    private List<Node> takeSeed(SocialKademliaRoutingTable table)
+    {
+        List<Node> seed = table.findClosestNodes(this.targetId, this.seedSize);
+        this.seedExhausted = seed.size() < this.seedSize;
+        this.addAll(seed);
+        return seed;
+    }
+
+    /**
+     * Add a node that's not been asked yet, unless the shortlist already has the node
+     *
+     * @param node The node
+     */
+    public void add(Node node)
+    {
+        this.put(node, UNASKED, false);
+    }
+
+    /**
+     * Add nodes that have not been asked yet; nodes the shortlist already has keep their state
+     *
+     * @param list The nodes
+     */
+    public void addAll(List<Node> list)
+    {
+        for (Node n : list)
+        {
+            this.put(n, UNASKED, false);
+        }
+    }
+
+    /**
+     * Set the state of a node, adding the node if the shortlist doesn't have it
+     *
+     * @param node  The node
+     * @param state The node's new state
+     */
+    public void set(Node node, byte state)
+    {
+        this.put(node, state, true);
+    }
+
+    /**
+     * Get the closest node that has not been asked, from among the k closest nodes that have not failed or are late
+     *
+     * @param k The number of closest nodes that have not failed or are late to look at
+     *
+     * @return The node, or null if all of them have been asked or are being asked
+     */
+    public Node closestUnasked(int k)
+    {
+        int remainingSpaces = k;
+        for (int i = 0; i < this.size && remainingSpaces > 0; i++)
+        {
+            if (this.states[i] != FAILED && this.states[i] != LATE)
+            {
+                if (this.states[i] == UNASKED)
+                {
+                    return this.nodes[i];
+                }
+                remainingSpaces--;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the node that has not been asked with the lowest cost, from among the k closest nodes that have not failed or are late;
+     * where nodes cost the same, the closest is taken.
+     *
+     * @param k    The number of closest nodes that have not failed or are late to look at
+     * @param cost The cost of asking a node, i.e. how long it takes to reply
+     *
+     * @return The node, or null if all of them have been asked or are being asked
+     */
+    public Node preferredUnasked(int k, ToLongFunction<Node> cost)
+    {
+        Node preferred = null;
+        long preferredCost = Long.MAX_VALUE;
+        int remainingSpaces = k;
+        for (int i = 0; i < this.size && remainingSpaces > 0; i++)
+        {
+            if (this.states[i] != FAILED && this.states[i] != LATE)
+            {
+                if (this.states[i] == UNASKED)
+                {
+                    long c = cost.applyAsLong(this.nodes[i]);
+                    if (preferred == null || c < preferredCost)
+                    {
+                        preferred = this.nodes[i];
+                        preferredCost = c;
+                    }
+                }
+                remainingSpaces--;
+            }
+        }
+
+        return preferred;
+    }
+
+    /**
+     * @param k The number of closest nodes that have not failed to look at
+     *
+     * @return Whether a late node is among the k closest nodes that have not failed, i.e. whether it's reply may still change the lookup's result
+     */
+    public boolean hasLate(int k)
+    {
+        int remainingSpaces = k;
+        for (int i = 0; i < this.size && remainingSpaces > 0; i++)
+        {
+            if (this.states[i] != FAILED)
+            {
+                if (this.states[i] == LATE)
+                {
+                    return true;
+                }
+                remainingSpaces--;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param state The state of the nodes to return
+     * @param k     The maximum number of nodes to return
+     *
+     * @return The k closest nodes that have the given state, closest first
+     */
+    public List<Node> closest(byte state, int k)
+    {
+        List<Node> closestNodes = new ArrayList<>(k);
+        for (int i = 0; i < this.size && closestNodes.size() < k; i++)
+        {
+            if (this.states[i] == state)
+            {
+                closestNodes.add(this.nodes[i]);
+            }
+        }
+
+        return closestNodes;
+    }
+
+    /**
+     * @param state The state of the nodes to return
+     *
+     * @return All nodes that have the given state, closest first
+     */
+    public List<Node> all(byte state)
+    {
+        return this.closest(state, this.size);
+    }
+
+    /**
+     * @return The number of nodes in the shortlist
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    private void put(Node node, byte state, boolean replace)
+    {
+        this.distance(node.getNodeId());
+        int i = this.search();
+        if (i >= 0)
+        {
+            if (replace)
+            {
+                this.states[i] = state;
+            }
+            return;
+        }
+
+        int at = -i - 1;
+        if (this.size == this.nodes.length)
+        {
+            int failed = this.farthestFailed();
+            if (failed >= 0)
+            {
+                /* Drop the farthest failed node to make space */
+                this.size--;
+                int moved = this.size - failed;
+                System.arraycopy(this.nodes, failed + 1, this.nodes, failed, moved);
+                System.arraycopy(this.states, failed + 1, this.states, failed, moved);
+                System.arraycopy(this.distances, (failed + 1) * this.words, this.distances, failed * this.words, moved * this.words);
+                this.nodes[this.size] = null;
+                if (failed < at)
+                {
+                    at--;
+                }
+            }
+            else if (at == this.size)
+            {
+                /* Farther than every node kept */
+                return;
+            }
+            else
+            {
+                /* Drop the farthest node to make space */
+                this.size--;
+            }
+        }
+
+        int moved = this.size - at;
+        System.arraycopy(this.nodes, at, this.nodes, at + 1, moved);
+        System.arraycopy(this.states, at, this.states, at + 1, moved);
+        System.arraycopy(this.distances, at * this.words, this.distances, (at + 1) * this.words, moved * this.words);
+
+        this.nodes[at] = node;
+        this.states[at] = state;
+        System.arraycopy(this.probe, 0, this.distances, at * this.words, this.words);
+        this.size++;
+    }
+
+    /**
+     * @return The index of the farthest failed node, or -1 if none has failed
+     */
+    private int farthestFailed()
+    {
+        for (int i = this.size - 1; i >= 0; i--)
+        {
+            if (this.states[i] == FAILED)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Compute the distance of an ID to the target into the probe
+     */
+    private void distance(KademliaId id)
+    {
+        byte[] bytes = id.getBytes();
+        for (int w = 0; w < this.words; w++)
+        {
+            long value = 0;
+            for (int j = w * 8; j < w * 8 + 8; j++)
+            {
+                value <<= 8;
+                if (j < this.target.length)
+                {
+                    value |= (bytes[j] ^ this.target[j]) & 0xFF;
+                }
+            }
+            this.probe[w] = value;
+        }
+    }
+
+    /**
+     * Binary search for the probe's distance; equal distances mean the same ID, since XOR with the target is one to one.
+     *
+     * @return The index of the node at the probe's distance, or (-(insertion point) - 1) if there's none
+     */
+    private int search()
+    {
+        int low = 0;
+        int high = this.size - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int cmp = this.compareToProbe(mid);
+            if (cmp < 0)
+            {
+                low = mid + 1;
+            }
+            else if (cmp > 0)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    private int compareToProbe(int index)
+    {
+        int offset = index * this.words;
+        for (int w = 0; w < this.words; w++)
+        {
+            int cmp = Long.compareUnsigned(this.distances[offset + w], this.probe[w]);
+            if (cmp != 0)
+            {
+                return cmp;
+            }
+        }
+
+        return 0;
+    }
+}
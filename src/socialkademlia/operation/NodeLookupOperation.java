@@ -2,19 +2,16 @@ package socialkademlia.operation;
 
 import kademlia.message.Receiver;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import kademlia.KadConfiguration;
 import kademlia.KadServer;
 import kademlia.exceptions.RoutingException;
 import kademlia.message.Message;
 import kademlia.message.NodeLookupMessage;
 import kademlia.message.NodeReplyMessage;
-import kademlia.node.KeyComparator;
 import kademlia.node.Node;
 import kademlia.node.KademliaId;
 import kademlia.operation.Operation;
@@ -31,28 +28,27 @@ import socialkademlia.SocialKademliaNode;
 public class NodeLookupOperation implements Operation, Receiver
 {
 
-    /* Constants */
-    private static final String UNASKED = "UnAsked";
-    private static final String AWAITING = "Awaiting";
-    private static final String ASKED = "Asked";
-    private static final String FAILED = "Failed";
-
     private final KadServer server;
     private final SocialKademliaNode localNode;
     private final KadConfiguration config;
 
     private final Message lookupMessage;        // Message sent to each peer
-    private final Map<Node, String> nodes;
+    private final LookupShortlist shortlist;
 
     /* Tracks messages in transit and awaiting reply */
-    private final Map<Integer, Node> messagesTransiting;
+    private final LookupRequests requests;
+
+    /* Whether the operation is done; set when we run out of nodes to ask or hit the deadline */
+    private boolean isFinished;
 
-    /* Used to sort nodes */
-    private final Comparator comparator;
+    /* Completed when the operation finishes; used when the operation is started with executeAsync() */
+    private final CompletableFuture<NodeLookupOperation> completion;
+    private ScheduledFuture<?> deadlineTask;
 
     
     {
-        messagesTransiting = new HashMap<>();
+        isFinished = false;
+        completion = new CompletableFuture<>();
     }
 
     /**
@@ -69,12 +65,11 @@ public class NodeLookupOperation implements Operation, Receiver
 
         this.lookupMessage = new NodeLookupMessage(localNode.getNode(), lookupId);
 
-        /**
-         * We initialize a TreeMap to store nodes.
-         * This map will be sorted by which nodes are closest to the lookupId
-         */
-        this.comparator = new KeyComparator(lookupId);
-        this.nodes = new TreeMap(this.comparator);
+        /* The nodes seen, sorted by which nodes are closest to the lookupId */
+        this.shortlist = new LookupShortlist(lookupId, config.k());
+
+        /* Messages are given timeouts worked out from the round trip times of the nodes they're sent to */
+        this.requests = new LookupRequests(localNode.getRoutingTable(), config.responseTimeout(), this::requestTimedOut);
     }
 
     /**
@@ -86,34 +81,22 @@ public class NodeLookupOperation implements Operation, Receiver
     {
         try
         {
-            /* Set the local node as already asked */
-            nodes.put(this.localNode.getNode(), ASKED);
+            this.start();
 
             /**
-             * We add all nodes here instead of the K-Closest because there may be the case that the K-Closest are offline
-             * - The operation takes care of looking at the K-Closest.
+             * If we haven't finished as yet, wait until we're notified that the operation is finished
+             * or for a maximum of config.operationTimeout() time
              */
-            this.addNodes(this.localNode.getRoutingTable().getAllNodes());
-
-            /* If we haven't finished as yet, wait for a maximum of config.operationTimeout() time */
-            int totalTimeWaited = 0;
-            int timeInterval = 10;     // We re-check every n milliseconds
-            while (totalTimeWaited < this.config.operationTimeout())
+            long timeLeft = TimeUnit.MILLISECONDS.toNanos(this.config.operationTimeout());
+            final long deadline = System.nanoTime() + timeLeft;
+            while (!this.isFinished && timeLeft > 0)
             {
-                if (!this.askNodesorFinish())
-                {
-                    wait(timeInterval);
-                    totalTimeWaited += timeInterval;
-                }
-                else
-                {
-                    break;
-                }
+                TimeUnit.NANOSECONDS.timedWait(this, timeLeft);
+                timeLeft = deadline - System.nanoTime();
             }
 
-            /* Now after we've finished, we would have an idea of offline nodes, lets update our routing table */
-            this.localNode.getRoutingTable().setUnresponsiveContacts(this.getFailedNodes());
-
+            /* Replies that come in after the deadline should not cause any more messages to be sent */
+            this.finish();
         }
         catch (InterruptedException e)
         {
@@ -121,9 +104,54 @@ public class NodeLookupOperation implements Operation, Receiver
         }
     }
 
-    public List<Node> getClosestNodes()
+    public synchronized List<Node> getClosestNodes()
+    {
+        return this.shortlist.closest(LookupShortlist.ASKED, this.config.k());
+    }
+
+    /**
+     * Start the operation without waiting for it to finish.
+     *
+     * @return A future that is completed with this operation once it has finished or config.operationTimeout() time has expired
+     *
+     * @throws java.io.IOException
+     */
+    public synchronized CompletableFuture<NodeLookupOperation> executeAsync() throws IOException
+    {
+        this.start();
+
+        if (!this.isFinished)
+        {
+            this.deadlineTask = OperationScheduler.schedule(this::deadlineReached, this.config.operationTimeout());
+        }
+
+        return this.completion;
+    }
+
+    /**
+     * Add the initial set of nodes and send out the first set of messages,
+     * from here on replies and timeouts drive the operation.
+     */
+    private void start() throws IOException
+    {
+        /* Set the local node as already asked */
+        this.shortlist.set(this.localNode.getNode(), LookupShortlist.ASKED);
+
+        /**
+         * We add the CONCURRENCY * K closest nodes here instead of the K-Closest because there may be the case that the K-Closest are offline
+         * - The operation takes care of looking at the K-Closest, and takes more nodes if these are exhausted by failures.
+         */
+        this.shortlist.seed(this.localNode.getRoutingTable(), this.config.maxConcurrentMessagesTransiting() * this.config.k());
+
+        this.askNodesorFinish();
+    }
+
+    /**
+     * The operation was started asynchronously and config.operationTimeout() time has expired
+     */
+    private synchronized void deadlineReached()
     {
-        return this.closestNodes(ASKED);
+        this.finish();
     }
 
     /**
@@ -133,14 +161,8 @@ public class NodeLookupOperation implements Operation, Receiver
      */
     public void addNodes(List<Node> list)
     {
-        for (Node o : list)
-        {
-            /* If this node is not in the list, add the node */
-            if (!nodes.containsKey(o))
-            {
-                nodes.put(o, UNASKED);
-            }
-        }
+        /* Nodes already in the shortlist keep their state */
+        this.shortlist.addAll(list);
     }
 
     /**
@@ -156,33 +178,46 @@ public class NodeLookupOperation implements Operation, Receiver
      */
     private boolean askNodesorFinish() throws IOException
     {
+        if (this.isFinished)
+        {
+            return true;
+        }
+
         /* If >= CONCURRENCY nodes are in transit, don't do anything */
-        if (this.config.maxConcurrentMessagesTransiting() <= this.messagesTransiting.size())
+        if (this.config.maxConcurrentMessagesTransiting() <= this.requests.size())
         {
             return false;
         }
 
-        /* Get unqueried nodes among the K closest seen that have not FAILED */
-        List<Node> unasked = this.closestNodesNotFailed(UNASKED);
+        /* Get the unqueried node among the K closest seen that have not FAILED that should reply the soonest */
+        Node n = this.preferredUnasked();
+
+        if (n == null && !this.isWaiting())
+        {
+            /* The nodes we started with may have been exhausted by failures, take more from the routing table */
+            this.shortlist.expandSeed(this.localNode.getRoutingTable());
+            n = this.preferredUnasked();
+        }
 
-        if (unasked.isEmpty() && this.messagesTransiting.isEmpty())
+        if (n == null && !this.isWaiting())
         {
-            /* We have no unasked nodes nor any messages in transit, we're finished! */
+            /* We have no unasked nodes nor any messages in transit or late replies that count, we're finished! */
+            this.finish();
             return true;
         }
 
         /**
-         * Send messages to nodes in the list;
+         * Send messages to the closest unasked nodes, those that reply quickest first;
          * making sure than no more than CONCURRENCY messsages are in transit
          */
-        for (int i = 0; (this.messagesTransiting.size() < this.config.maxConcurrentMessagesTransiting()) && (i < unasked.size()); i++)
+        while (n != null && this.requests.size() < this.config.maxConcurrentMessagesTransiting())
         {
-            Node n = (Node) unasked.get(i);
-
             int comm = server.sendMessage(n, lookupMessage, this);
 
-            this.nodes.put(n, AWAITING);
-            this.messagesTransiting.put(comm, n);
+            this.shortlist.set(n, LookupShortlist.AWAITING);
+            this.requests.sent(comm, n);
+
+            n = this.preferredUnasked();
         }
 
         /* We're not finished as yet, return false */
@@ -190,62 +225,43 @@ public class NodeLookupOperation implements Operation, Receiver
     }
 
     /**
-     * @param status The status of the nodes to return
-     *
-     * @return The K closest nodes to the target lookupId given that have the specified status
+     * @return Whether a message is in transit, or a late node's reply may still change the K closest nodes
      */
-    private List<Node> closestNodes(String status)
+    private boolean isWaiting()
     {
-        List<Node> closestNodes = new ArrayList<>(this.config.k());
-        int remainingSpaces = this.config.k();
-
-        for (Map.Entry e : this.nodes.entrySet())
-        {
-            if (status.equals(e.getValue()))
-            {
-                /* We got one with the required status, now add it */
-                closestNodes.add((Node) e.getKey());
-                if (--remainingSpaces == 0)
-                {
-                    break;
-                }
-            }
-        }
-
-        return closestNodes;
+        return !this.requests.isEmpty() || this.shortlist.hasLate(this.config.k());
     }
 
     /**
-     * Find The K closest nodes to the target lookupId given that have not FAILED.
-     * From those K, get those that have the specified status
-     *
-     * @param status The status of the nodes to return
-     *
-     * @return A List of the closest nodes
+     * @return The unasked node among the K closest seen that have not FAILED which we expect to reply the soonest
      */
-    private List<Node> closestNodesNotFailed(String status)
+    private Node preferredUnasked()
     {
-        List<Node> closestNodes = new ArrayList<>(this.config.k());
-        int remainingSpaces = this.config.k();
+        return this.shortlist.preferredUnasked(this.config.k(), (Node n) -> this.localNode.getRoutingTable().getResponseTimeout(n, this.config.responseTimeout()));
+    }
 
-        for (Map.Entry<Node, String> e : this.nodes.entrySet())
+    /**
+     * Mark this operation as finished; wakes up the thread waiting in execute() and completes the future returned by executeAsync()
+     */
+    private void finish()
+    {
+        if (this.isFinished)
         {
-            if (!FAILED.equals(e.getValue()))
-            {
-                if (status.equals(e.getValue()))
-                {
-                    /* We got one with the required status, now add it */
-                    closestNodes.add(e.getKey());
-                }
-
-                if (--remainingSpaces == 0)
-                {
-                    break;
-                }
-            }
+            return;
         }
 
-        return closestNodes;
+        this.isFinished = true;
+        this.notifyAll();
+        this.requests.cancelTimeouts();
+
+        /* Now after we've finished, we would have an idea of offline nodes, lets update our routing table */
+        this.localNode.getRoutingTable().setUnresponsiveContacts(this.getFailedNodes());
+
+        if (this.deadlineTask != null)
+        {
+            this.deadlineTask.cancel(false);
+        }
+        this.completion.complete(this);
     }
 
     /**
@@ -258,6 +274,9 @@ public class NodeLookupOperation implements Operation, Receiver
     @Override
     public synchronized void receive(Message incoming, int comm) throws IOException
     {
+        /* Take in how long the node took to reply */
+        this.requests.replied(comm);
+
         if (!(incoming instanceof NodeReplyMessage))
         {
             /* Not sure why we get a message of a different type here... @todo Figure it out. */
@@ -271,10 +290,7 @@ public class NodeLookupOperation implements Operation, Receiver
         this.localNode.getRoutingTable().insert(origin);
 
         /* Set that we've completed ASKing the origin node */
-        this.nodes.put(origin, ASKED);
-
-        /* Remove this msg from messagesTransiting since it's completed now */
-        this.messagesTransiting.remove(comm);
+        this.shortlist.set(origin, LookupShortlist.ASKED);
 
         /* Add the received nodes to our nodes list to query */
         this.addNodes(msg.getNodes());
@@ -292,7 +308,7 @@ public class NodeLookupOperation implements Operation, Receiver
     public synchronized void timeout(int comm) throws IOException
     {
         /* Get the node associated with this communication */
-        Node n = this.messagesTransiting.get(comm);
+        Node n = this.requests.expired(comm);
 
         if (n == null)
         {
@@ -300,25 +316,45 @@ public class NodeLookupOperation implements Operation, Receiver
         }
 
         /* Mark this node as failed and inform the routing table that it is unresponsive */
-        this.nodes.put(n, FAILED);
+        this.shortlist.set(n, LookupShortlist.FAILED);
         this.localNode.getRoutingTable().setUnresponsiveContact(n);
-        this.messagesTransiting.remove(comm);
 
         this.askNodesorFinish();
     }
 
-    public List<Node> getFailedNodes()
+    /**
+     * A node has not replied within the timeout worked out from it's round trip times;
+     * another node is asked in it's place, but we still take in it's reply if it comes before the KadServer gives up on it,
+     * and don't finish without it if it's among the K closest nodes.
+     *
+     * @param comm
+     */
+    private synchronized void requestTimedOut(int comm)
     {
-        List<Node> failedNodes = new ArrayList<>();
+        if (this.isFinished)
+        {
+            return;
+        }
+
+        Node n = this.requests.timedOut(comm);
+        if (n == null)
+        {
+            return;
+        }
 
-        for (Map.Entry<Node, String> e : this.nodes.entrySet())
+        this.shortlist.set(n, LookupShortlist.LATE);
+        try
         {
-            if (e.getValue().equals(FAILED))
-            {
-                failedNodes.add(e.getKey());
-            }
+            this.askNodesorFinish();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error whiles asking more nodes after a node timed out. Msg: " + e.getMessage());
         }
+    }
 
-        return failedNodes;
+    public synchronized List<Node> getFailedNodes()
+    {
+        return this.shortlist.all(LookupShortlist.FAILED);
     }
 }
@@ -0,0 +1,49 @@
+package socialkademlia.operation;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules delayed work for operations, like the deadline of an operation that was started asynchronously.
+ *
+ * A single daemon thread is shared by all operations in this JVM, so an operation in progress does not need a thread of it's own.
+ *
+ * @author Joshua Kissoon
+ * @since 20140610
+ */
+public class OperationScheduler
+{
+
+    private static final ScheduledThreadPoolExecutor scheduler;
+
+    static
+    {
+        scheduler = new ScheduledThreadPoolExecutor(1, (Runnable r) ->
+        {
+            Thread t = new Thread(r, "SocialKademlia-OperationScheduler");
+            t.setDaemon(true);
+            return t;
+        });
+
+        /* Operations normally finish before their deadline, don't keep the cancelled tasks around */
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    private OperationScheduler()
+    {
+    }
+
+    /**
+     * Run a task once after the given delay.
+     *
+     * @param task  The task to run
+     * @param delay The delay in milliseconds
+     *
+     * @return The scheduled task, which can be used to cancel it
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delay)
+    {
+        return scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+}
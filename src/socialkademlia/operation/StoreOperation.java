@@ -2,6 +2,9 @@ package socialkademlia.operation;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import kademlia.KadConfiguration;
 import kademlia.KadServer;
 import kademlia.message.Message;
@@ -12,6 +15,7 @@ import socialkademlia.SocialKademliaNode;
 import socialkademlia.dht.JSocialKademliaStorageEntry;
 import socialkademlia.dht.SocialKademliaDHT;
 import socialkademlia.dht.SocialKademliaStorageEntry;
+import socialkademlia.DefaultSocialKadConfiguration;
 
 /**
  * Operation that stores a DHT Content onto the K closest nodes to the content Key
@@ -50,10 +54,46 @@ public class StoreOperation implements Operation
         /* Get the nodes on which we need to store the content */
         NodeLookupOperation ndlo = new NodeLookupOperation(this.server, this.localNode, this.storageEntry.getContentMetadata().getKey(), this.config);
         ndlo.execute();
-        List<Node> nodes = ndlo.getClosestNodes();
+        this.storeOnNodes(ndlo.getClosestNodes());
+    }
 
+    /**
+     * Start the operation without waiting for it to finish.
+     *
+     * @param executor The executor used to send the content once the K-Closest nodes have been found
+     *
+     * @return A future that is completed with this operation once the content has been sent to the K-Closest nodes
+     *
+     * @throws java.io.IOException
+     */
+    public CompletableFuture<StoreOperation> executeAsync(Executor executor) throws IOException
+    {
+        /* Get the nodes on which we need to store the content */
+        NodeLookupOperation ndlo = new NodeLookupOperation(this.server, this.localNode, this.storageEntry.getContentMetadata().getKey(), this.config);
+
+        return ndlo.executeAsync().thenApplyAsync((NodeLookupOperation op) ->
+        {
+            try
+            {
+                this.storeOnNodes(op.getClosestNodes());
+                return this;
+            }
+            catch (IOException e)
+            {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Store the content on the given nodes
+     *
+     * @param nodes The K-Closest nodes to the content
+     */
+    private synchronized void storeOnNodes(List<Node> nodes) throws IOException
+    {
         /* Create the message */
-        Message msg = new StoreContentMessage(this.localNode.getNode(), this.storageEntry);
+        Message msg = new StoreContentMessage(this.localNode.getNode(), this.storageEntry, DefaultSocialKadConfiguration.socialSettings(this.config).useBinaryMessages());
 
         /*Store the message on all of the K-Nodes*/
         for (Node n : nodes)
@@ -1,12 +1,19 @@
 package socialkademlia.routing;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.NoSuchElementException;
 import kademlia.KadConfiguration;
+import kademlia.node.KademliaId;
+import kademlia.node.KeyComparator;
 import kademlia.node.Node;
+import kademlia.routing.Contact;
 import kademlia.routing.JKademliaRoutingTable;
+import kademlia.routing.KademliaBucket;
 
 /**
  * Implementation of SocialKademliaRoutingTable
@@ -20,6 +27,9 @@ public class JSocialKademliaRoutingTable extends JKademliaRoutingTable implement
     /* Connections of the actor of this node in the DOSN */
     private final HashMap<String, Connection> connections;
 
+    /* Round trip times of the nodes we've sent messages to; not saved with the routing table */
+    private transient volatile RoundTripTimes roundTripTimes;
+
     
     {
         connections = new HashMap<>();
@@ -68,6 +78,100 @@ public class JSocialKademliaRoutingTable extends JKademliaRoutingTable implement
         return this.connections.isEmpty() ? new ArrayList<>() : new ArrayList<>(this.connections.values());
     }
 
+    /**
+     * Each bucket holds the nodes at one distance from the local node, and so the distances of it's nodes to any target
+     * fall in a range no other bucket's do. The buckets are ordered by the distance of one node of each to the target,
+     * then taken closest first until they hold enough nodes, and only the nodes of those buckets are sorted.
+     */
+    @Override
+    public synchronized List<Node> findClosestNodes(KademliaId target, int numNodesRequired)
+    {
+        BigInteger targetInt = target.getInt();
+
+        /* The contacts of the buckets that have any, and the distance of one of them to the target */
+        List<List<Contact>> buckets = new ArrayList<>();
+        List<BigInteger> distances = new ArrayList<>();
+        for (KademliaBucket b : this.getBuckets())
+        {
+            List<Contact> contacts = b.getContacts();
+            if (!contacts.isEmpty())
+            {
+                buckets.add(contacts);
+                distances.add(contacts.get(0).getNode().getNodeId().getInt().xor(targetInt));
+            }
+        }
+
+        List<Integer> order = new ArrayList<>(buckets.size());
+        for (int i = 0; i < buckets.size(); i++)
+        {
+            order.add(i);
+        }
+        Collections.sort(order, Comparator.comparing(distances::get));
+
+        List<Node> closest = new ArrayList<>();
+        for (int i = 0; i < order.size() && closest.size() < numNodesRequired; i++)
+        {
+            for (Contact c : buckets.get(order.get(i)))
+            {
+                closest.add(c.getNode());
+            }
+        }
+
+        Collections.sort(closest, new KeyComparator(target));
+        return closest.size() > numNodesRequired ? new ArrayList<>(closest.subList(0, numNodesRequired)) : closest;
+    }
+
+    @Override
+    public void addRoundTripTime(Node node, long time)
+    {
+        this.roundTripTimes().add(node.getNodeId(), time);
+    }
+
+    @Override
+    public void addResponseTimeout(Node node)
+    {
+        this.roundTripTimes().addTimeout(node.getNodeId());
+    }
+
+    @Override
+    public long getResponseTimeout(Node node, long maxTimeout)
+    {
+        return this.roundTripTimes().timeout(node.getNodeId(), maxTimeout);
+    }
+
+    @Override
+    public long getRoundTripTime(Node node)
+    {
+        return this.roundTripTimes().get(node.getNodeId());
+    }
+
+    @Override
+    public long getRoundTripTimePercentile(double percentile)
+    {
+        return this.roundTripTimes().percentile(percentile);
+    }
+
+    /**
+     * The round trip times are created when first used, since a routing table read from a saved state doesn't run our initializers.
+     */
+    private RoundTripTimes roundTripTimes()
+    {
+        RoundTripTimes rtt = this.roundTripTimes;
+        if (rtt == null)
+        {
+            synchronized (this)
+            {
+                if (this.roundTripTimes == null)
+                {
+                    this.roundTripTimes = new RoundTripTimes();
+                }
+                rtt = this.roundTripTimes;
+            }
+        }
+
+        return rtt;
+    }
+
     @Override
     public synchronized Node getConnectionNode(String actorId)
     {
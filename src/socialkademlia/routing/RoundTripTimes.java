@@ -0,0 +1,211 @@
+package socialkademlia.routing;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import kademlia.node.KademliaId;
+
+/**
+ * Keeps a smoothed round trip time and it's variance for each node we've sent messages to,
+ * from which a timeout is worked out for each message sent to the node, as TCP does (RFC 6298).
+ *
+ * Only the nodes messaged most recently are kept, so a node we've not messaged in a while is treated as a new node.
+ * A new node is given the timeout worked out from the round trip times of all nodes together,
+ * so a dead node we've never heard from doesn't hold up a lookup for the longest timeout;
+ * that timeout is backed off for the node like any other each time the node doesn't reply within it,
+ * so a node that's only slower than most is soon given long enough to reply.
+ *
+ * @author Joshua Kissoon
+ * @since 20140627
+ */
+class RoundTripTimes
+{
+
+    /* How many nodes round trip times are kept for */
+    private static final int MAX_NODES = 4096;
+
+    /* Gains of the smoothed round trip time and it's variance */
+    private static final int ALPHA_SHIFT = 3;     // 1/8
+    private static final int BETA_SHIFT = 2;      // 1/4
+
+    /* No timeout is shorter than this, so a little jitter doesn't fail a node */
+    public static final long MIN_TIMEOUT = 200;     // in milliseconds
+
+    /* How many times the timeout of a node is doubled at most, when messages to it timeout one after the other */
+    private static final int MAX_BACKOFF = 4;
+
+    /* How many of the latest round trip times are kept to work out percentiles from, and how many are needed */
+    private static final int NUM_SAMPLES = 256;
+    private static final int MIN_SAMPLES = 16;
+
+    private final LinkedHashMap<KademliaId, Estimate> estimates;
+
+    /* The round trip times of all nodes together */
+    private final Estimate all;
+
+    /* The latest round trip times of all nodes, in nanoseconds; used as a ring buffer */
+    private final long[] samples;
+    private int nextSample, numSamples;
+
+
+    {
+        estimates = new LinkedHashMap<>(64, 0.75f, true);
+        all = new Estimate();
+        samples = new long[NUM_SAMPLES];
+        nextSample = 0;
+        numSamples = 0;
+    }
+
+    /**
+     * Take in the time a node took to reply to a message
+     *
+     * @param nodeId The node
+     * @param time   The round trip time in nanoseconds
+     */
+    public synchronized void add(KademliaId nodeId, long time)
+    {
+        Estimate e = this.estimates.get(nodeId);
+        if (e == null)
+        {
+            e = new Estimate();
+            this.estimates.put(nodeId, e);
+            this.evict();
+        }
+        e.add(time);
+        this.all.add(time);
+        this.samples[this.nextSample] = time;
+        this.nextSample = (this.nextSample + 1) % NUM_SAMPLES;
+        this.numSamples = Math.min(this.numSamples + 1, NUM_SAMPLES);
+
+        /* A reply means the node is reachable again */
+        e.backoff = 0;
+    }
+
+    /**
+     * A node did not reply within it's timeout; the next message to it gets twice as long
+     *
+     * @param nodeId The node
+     */
+    public synchronized void addTimeout(KademliaId nodeId)
+    {
+        Estimate e = this.estimates.get(nodeId);
+        if (e == null)
+        {
+            /* Keep the backoff of a node we've no round trip times for as yet */
+            e = new Estimate();
+            this.estimates.put(nodeId, e);
+            this.evict();
+        }
+
+        if (e.backoff < MAX_BACKOFF)
+        {
+            e.backoff++;
+        }
+    }
+
+    /**
+     * @param nodeId     The node
+     * @param maxTimeout The longest timeout, used while we have no round trip times for any node
+     *
+     * @return The timeout for a message to the node in milliseconds
+     */
+    public synchronized long timeout(KademliaId nodeId, long maxTimeout)
+    {
+        Estimate e = this.estimates.get(nodeId);
+        int backoff = e == null ? 0 : e.backoff;
+        if (e == null || e.isEmpty())
+        {
+            e = this.all;
+        }
+
+        return e.isEmpty() ? maxTimeout : Math.min(e.timeout(backoff), maxTimeout);
+    }
+
+    /**
+     * @param nodeId The node
+     *
+     * @return The smoothed round trip time to the node in nanoseconds, or -1 if we have none for the node
+     */
+    public synchronized long get(KademliaId nodeId)
+    {
+        Estimate e = this.estimates.get(nodeId);
+        return e == null ? -1 : e.srtt;
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 1
+     *
+     * @return The given percentile of the latest round trip times of all nodes in milliseconds, or -1 if there are too few as yet
+     */
+    public long percentile(double percentile)
+    {
+        long[] sorted;
+        synchronized (this)
+        {
+            if (this.numSamples < MIN_SAMPLES)
+            {
+                return -1;
+            }
+            sorted = Arrays.copyOf(this.samples, this.numSamples);
+        }
+
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000000L;
+    }
+
+    /**
+     * Forget the node messaged least recently once there are too many
+     */
+    private void evict()
+    {
+        if (this.estimates.size() > MAX_NODES)
+        {
+            Iterator<Map.Entry<KademliaId, Estimate>> it = this.estimates.entrySet().iterator();
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Smoothed round trip times, in nanoseconds
+     */
+    private static class Estimate
+    {
+
+        private long srtt = -1;
+        private long rttvar;
+        private int backoff;
+
+        public void add(long time)
+        {
+            if (this.srtt < 0)
+            {
+                this.srtt = time;
+                this.rttvar = time / 2;
+            }
+            else
+            {
+                this.rttvar += (Math.abs(this.srtt - time) - this.rttvar) >> BETA_SHIFT;
+                this.srtt += (time - this.srtt) >> ALPHA_SHIFT;
+            }
+        }
+
+        public boolean isEmpty()
+        {
+            return this.srtt < 0;
+        }
+
+        /**
+         * @param backoff How many times to double the timeout
+         *
+         * @return The timeout in milliseconds
+         */
+        public long timeout(int backoff)
+        {
+            long timeout = (this.srtt + 4 * this.rttvar) / 1000000L;
+            return Math.max(timeout, MIN_TIMEOUT) << backoff;
+        }
+    }
+}
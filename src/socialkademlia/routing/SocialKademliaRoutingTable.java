@@ -1,6 +1,7 @@
 package socialkademlia.routing;
 
 import java.util.List;
+import kademlia.node.KademliaId;
 import kademlia.node.Node;
 import kademlia.routing.KademliaRoutingTable;
 
@@ -53,4 +54,55 @@ public interface SocialKademliaRoutingTable extends KademliaRoutingTable
      * @return An Iterable structure with all connections in this routing table
      */
     public List<Connection> getConnections();
+
+    /**
+     * Find the closest nodes to a target, like findClosest(), but only sorting the nodes of the buckets that hold them.
+     *
+     * @param target           The target to find nodes close to
+     * @param numNodesRequired The number of nodes to find
+     *
+     * @return The closest nodes to the target, closest first
+     */
+    public List<Node> findClosestNodes(KademliaId target, int numNodesRequired);
+
+    /**
+     * Take in the time a node took to reply to a message.
+     *
+     * @param node The node
+     * @param time The round trip time in nanoseconds
+     */
+    public void addRoundTripTime(Node node, long time);
+
+    /**
+     * A node did not reply to a message within the timeout it was given.
+     *
+     * @param node The node
+     */
+    public void addResponseTimeout(Node node);
+
+    /**
+     * Get how long to wait for a node to reply to a message, worked out from the node's round trip times,
+     * or from those of all nodes for a node we have none for; backed off each time the node didn't reply within it's timeout.
+     *
+     * @param node       The node
+     * @param maxTimeout The longest timeout, given while we have no round trip times for any node
+     *
+     * @return The timeout in milliseconds
+     */
+    public long getResponseTimeout(Node node, long maxTimeout);
+
+    /**
+     * @param node The node
+     *
+     * @return The smoothed round trip time to the node in nanoseconds, or -1 if we have none for the node
+     */
+    public long getRoundTripTime(Node node);
+
+    /**
+     * @param percentile The percentile, between 0 and 1
+     *
+     * @return The given percentile of the round trip times of the latest replies from all nodes in milliseconds,
+     *         or -1 if too few replies have been seen as yet
+     */
+    public long getRoundTripTimePercentile(double percentile);
 }
@@ -0,0 +1,131 @@
+package socialkademlia.simulations;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import socialkademlia.util.compression.CompressionCodec;
+import socialkademlia.util.compression.DeflateCodec;
+import socialkademlia.util.compression.GzipCodec;
+import socialkademlia.util.compression.LZFCodec;
+import socialkademlia.util.compression.NoCompressionCodec;
+
+/**
+ * Compares the compression codecs on content similar to what a social network stores:
+ * the compressed size and the time taken to compress and decompress content of different sizes.
+ *
+ * @author Joshua Kissoon
+ * @since 20140616
+ */
+public class CompressionCodecBenchmark
+{
+
+    private static final int NUM_RUNS = 2000;
+    private static final int WARMUP_RUNS = 5000;
+    private static final int[] CONTENT_SIZES = new int[]
+    {
+        200, 2000, 20000
+    };
+
+    private static final String[] WORDS = new String[]
+    {
+        "the", "social", "network", "status", "update", "friend", "photo", "comment", "like", "share",
+        "today", "great", "time", "with", "everyone", "at", "party", "new", "post", "check", "this", "out"
+    };
+
+    public CompressionCodecBenchmark()
+    {
+        List<CompressionCodec> codecs = new ArrayList<>();
+        codecs.add(new NoCompressionCodec());
+        codecs.add(new GzipCodec());
+        codecs.add(new DeflateCodec(1));
+        codecs.add(new DeflateCodec(6));
+        codecs.add(new DeflateCodec(9));
+        codecs.add(new LZFCodec());
+
+        Random random = new Random(1);
+
+        try
+        {
+            for (int size : CONTENT_SIZES)
+            {
+                byte[] content = generateContent(random, size);
+                System.out.println("\nContent size: " + content.length + " bytes");
+                System.out.println(String.format("%-12s %10s %8s %16s %16s", "Codec", "Size", "Ratio", "Compress (us)", "Decompress (us)"));
+
+                for (CompressionCodec codec : codecs)
+                {
+                    this.run(codec, content);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private void run(CompressionCodec codec, byte[] content) throws IOException
+    {
+        byte[] compressed = null;
+        for (int i = 0; i < WARMUP_RUNS; i++)
+        {
+            compressed = codec.compress(content);
+            codec.decompress(compressed);
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < NUM_RUNS; i++)
+        {
+            compressed = codec.compress(content);
+        }
+        long compressTime = (System.nanoTime() - startTime) / NUM_RUNS;
+
+        byte[] decompressed = null;
+        startTime = System.nanoTime();
+        for (int i = 0; i < NUM_RUNS; i++)
+        {
+            decompressed = codec.decompress(compressed);
+        }
+        long decompressTime = (System.nanoTime() - startTime) / NUM_RUNS;
+
+        if (!Arrays.equals(content, decompressed))
+        {
+            System.err.println(codec.name() + " did not decompress to the original content");
+        }
+
+        System.out.println(String.format("%-12s %10d %8.3f %16.2f %16.2f",
+                codec.name(), compressed.length, (double) compressed.length / content.length,
+                compressTime / 1000.0, decompressTime / 1000.0));
+    }
+
+    /**
+     * Generate JSON like posts of random words, up to the given size
+     */
+    private static byte[] generateContent(Random random, int size)
+    {
+        StringBuilder sb = new StringBuilder("[");
+        int post = 0;
+        while (sb.length() < size)
+        {
+            sb.append("{\"id\":").append(post++).append(",\"owner\":\"user").append(random.nextInt(100)).append("\",\"text\":\"");
+            int words = 5 + random.nextInt(20);
+            for (int i = 0; i < words; i++)
+            {
+                sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            sb.append("\",\"ts\":").append(1400000000L + random.nextInt(10000000)).append("},");
+        }
+        sb.setLength(size - 1);
+        sb.append("]");
+
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args)
+    {
+        new CompressionCodecBenchmark();
+    }
+}
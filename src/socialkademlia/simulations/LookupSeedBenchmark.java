@@ -0,0 +1,144 @@
+package socialkademlia.simulations;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.TreeMap;
+import kademlia.node.KademliaId;
+import kademlia.node.KeyComparator;
+import kademlia.node.Node;
+import socialkademlia.DefaultSocialKadConfiguration;
+import socialkademlia.operation.LookupShortlist;
+import socialkademlia.routing.JSocialKademliaRoutingTable;
+
+/**
+ * Measures the time taken to seed a lookup from a full routing table,
+ * adding every node in the routing table compared to adding only the closest CONCURRENCY * K nodes.
+ *
+ * @author Joshua Kissoon
+ * @since 20140625
+ */
+public class LookupSeedBenchmark
+{
+
+    private static final int K = 20;
+    private static final int CONCURRENCY = 3;
+    private static final int NUM_TARGETS = 256;
+    private static final int NUM_RUNS = 2000;
+    private static final int WARMUP_RUNS = 2000;
+
+    private final Random random = new Random(20140625);
+
+    public LookupSeedBenchmark()
+    {
+        try
+        {
+            Node localNode = new Node(new KademliaId(), InetAddress.getLocalHost(), 12049);
+            JSocialKademliaRoutingTable table = new JSocialKademliaRoutingTable(localNode, new DefaultSocialKadConfiguration()
+            {
+                @Override
+                public int k()
+                {
+                    return K;
+                }
+            });
+
+            /* Fill every bucket of the routing table */
+            for (int d = 1; d <= KademliaId.ID_LENGTH; d++)
+            {
+                for (int i = 0; i < K; i++)
+                {
+                    table.insert(new Node(this.idAtDistance(localNode.getNodeId(), d), InetAddress.getLocalHost(), 12050 + i));
+                }
+            }
+
+            KademliaId[] targets = new KademliaId[NUM_TARGETS];
+            for (int i = 0; i < NUM_TARGETS; i++)
+            {
+                targets[i] = new KademliaId();
+                if (!table.findClosestNodes(targets[i], K).equals(table.findClosest(targets[i], K)))
+                {
+                    System.err.println("The closest buckets don't hold the closest nodes to " + targets[i]);
+                }
+            }
+
+            System.out.println("Routing table of " + table.getAllNodes().size() + " nodes, seeding " + CONCURRENCY * K + " nodes");
+            System.out.println(String.format("%-40s %14s", "Seeding", "Per lookup (us)"));
+
+            this.run("All nodes, TreeMap", targets, (target) ->
+            {
+                TreeMap<Node, String> nodes = new TreeMap<>(new KeyComparator(target));
+                for (Node n : table.getAllNodes())
+                {
+                    nodes.putIfAbsent(n, "UnAsked");
+                }
+            });
+            this.run("All nodes, shortlist", targets, (target) ->
+            {
+                new LookupShortlist(target, K).addAll(table.getAllNodes());
+            });
+            this.run("findClosest, shortlist", targets, (target) ->
+            {
+                new LookupShortlist(target, K).addAll(table.findClosest(target, CONCURRENCY * K));
+            });
+            this.run("Closest buckets, shortlist", targets, (target) ->
+            {
+                new LookupShortlist(target, K).seed(table, CONCURRENCY * K);
+            });
+        }
+        catch (UnknownHostException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Generate a random ID at the given distance from an ID, so it goes into the bucket for that distance
+     */
+    private KademliaId idAtDistance(KademliaId id, int distance)
+    {
+        byte[] bytes = new byte[KademliaId.ID_LENGTH / 8];
+        this.random.nextBytes(bytes);
+
+        /* Only the bit at the distance and the bits after it may differ */
+        int bit = KademliaId.ID_LENGTH - distance;
+        for (int i = 0; i < bit; i++)
+        {
+            bytes[i / 8] &= ~(0x80 >>> (i % 8));
+        }
+        bytes[bit / 8] |= 0x80 >>> (bit % 8);
+
+        return id.xor(new KademliaId(bytes));
+    }
+
+    private void run(String name, KademliaId[] targets, Task task)
+    {
+        for (int i = 0; i < WARMUP_RUNS; i++)
+        {
+            task.run(targets[i % targets.length]);
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < NUM_RUNS; i++)
+        {
+            task.run(targets[i % targets.length]);
+        }
+        long time = (System.nanoTime() - startTime) / NUM_RUNS;
+
+        System.out.println(String.format("%-40s %14.2f", name, time / 1000.0));
+    }
+
+    /**
+     * Seeding one lookup
+     */
+    private interface Task
+    {
+
+        public void run(KademliaId target);
+    }
+
+    public static void main(String[] args)
+    {
+        new LookupSeedBenchmark();
+    }
+}
@@ -0,0 +1,124 @@
+package socialkademlia.simulations;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import kademlia.node.KademliaId;
+import kademlia.util.serializer.JsonSerializer;
+import kademlia.util.serializer.KadSerializer;
+import socialkademlia.dht.GetParameterFUC;
+import socialkademlia.dht.JSocialKademliaStorageEntry;
+import socialkademlia.dht.JSocialKademliaStorageEntryMetadata;
+import socialkademlia.util.serializer.Serializers;
+import socialkademlia.util.serializer.StorageEntrySerializer;
+
+/**
+ * Measures the time taken to write and read what messages carry,
+ * creating a new serializer for every message compared to using the shared serializers.
+ *
+ * @author Joshua Kissoon
+ * @since 20140620
+ */
+public class SerializerBenchmark
+{
+
+    private static final int NUM_RUNS = 20000;
+    private static final int WARMUP_RUNS = 20000;
+
+    public SerializerBenchmark()
+    {
+        GetParameterFUC params = new GetParameterFUC(new KademliaId(), "StatusPost", "joshua", System.currentTimeMillis() / 1000L);
+        JSocialKademliaStorageEntryMetadata md = new JSocialKademliaStorageEntryMetadata(new KademliaId(), "joshua", "StatusPost",
+                12345, System.currentTimeMillis() / 1000L, false, true, System.currentTimeMillis() / 1000L);
+        JSocialKademliaStorageEntry entry = new JSocialKademliaStorageEntry(new byte[200], md, (byte) 0);
+
+        try
+        {
+            System.out.println(String.format("%-40s %14s", "Serializer", "Per message (us)"));
+
+            this.run("GetParameterFUC, new JsonSerializer", () ->
+            {
+                KadSerializer<GetParameterFUC> s = new JsonSerializer<>();
+                s.read(new DataInputStream(new ByteArrayInputStream(write(s, params))));
+            });
+            this.run("GetParameterFUC, shared JsonSerializer", () ->
+            {
+                KadSerializer<GetParameterFUC> s = Serializers.json();
+                s.read(new DataInputStream(new ByteArrayInputStream(write(s, params))));
+            });
+            this.run("GetParameterFUC, binary", () ->
+            {
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                params.toStream(new DataOutputStream(bout));
+                GetParameterFUC.fromStream(new DataInputStream(new ByteArrayInputStream(bout.toByteArray())));
+            });
+
+            this.run("Entry metadata, new Gson", () ->
+            {
+                Gson gson = new Gson();
+                gson.fromJson(gson.toJson(md), JSocialKademliaStorageEntryMetadata.class);
+            });
+            this.run("Entry metadata, shared Gson", () ->
+            {
+                Gson gson = Serializers.gson();
+                gson.fromJson(gson.toJson(md), JSocialKademliaStorageEntryMetadata.class);
+            });
+
+            this.run("Storage entry, JSON", () ->
+            {
+                StorageEntrySerializer s = Serializers.storageEntry(false);
+                s.read(new DataInputStream(new ByteArrayInputStream(write(s, entry))));
+            });
+            this.run("Storage entry, binary", () ->
+            {
+                StorageEntrySerializer s = Serializers.storageEntry(true);
+                s.read(new DataInputStream(new ByteArrayInputStream(write(s, entry))));
+            });
+        }
+        catch (IOException | ClassNotFoundException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private void run(String name, Task task) throws IOException, ClassNotFoundException
+    {
+        for (int i = 0; i < WARMUP_RUNS; i++)
+        {
+            task.run();
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < NUM_RUNS; i++)
+        {
+            task.run();
+        }
+        long time = (System.nanoTime() - startTime) / NUM_RUNS;
+
+        System.out.println(String.format("%-40s %14.2f", name, time / 1000.0));
+    }
+
+    private static <T> byte[] write(KadSerializer<T> s, T data) throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        s.write(data, new DataOutputStream(bout));
+        return bout.toByteArray();
+    }
+
+    /**
+     * One message's worth of serializing
+     */
+    private interface Task
+    {
+
+        public void run() throws IOException, ClassNotFoundException;
+    }
+
+    public static void main(String[] args)
+    {
+        new SerializerBenchmark();
+    }
+}
@@ -1,16 +1,20 @@
 package socialkademlia.util;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.Base64;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
- * Class that handles compression of Strings
+ * Class that handles compression of content.
+ *
+ * Compressed data is kept as raw bytes; it is never converted to a String, so it doesn't need to be Base64 encoded.
+ *
+ * Deflaters and Inflaters hold native memory and are expensive to create, so each thread reuses it's own,
+ * along with a scratch buffer that output is built in; the only allocation per call is the result.
+ * The GZIP header and trailer are written and checked here rather than by GZIP streams, which would allocate their own.
  *
  * @author Joshua
  * @since
@@ -18,31 +22,358 @@ import java.util.zip.GZIPOutputStream;
 public class StringCompressor
 {
 
-    public static String compress(final byte[] input) throws IOException
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    private static final int GZIP_HEADER_LENGTH = 10;
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    /* GZIP header flags */
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    /* Scratch buffers larger than this are not kept for reuse */
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    /* Deflate can't compress data to less than about 1/1032 of it's size */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    /* Raw deflate data needs a byte after it for zlib to be sure it has seen the end of it */
+    private static final byte[] INFLATE_PADDING = new byte[1];
+
+    /* Each thread has a Deflater per level, since changing a Deflater's level only takes effect after it has compressed some data */
+    private static final ThreadLocal<Deflater[]> deflaters = ThreadLocal.withInitial(() -> new Deflater[Deflater.BEST_COMPRESSION + 2]);
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<CRC32> checksums = ThreadLocal.withInitial(CRC32::new);
+    private static final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER_SIZE]);
+
+    /**
+     * GZIP some data
+     *
+     * @param input The data
+     *
+     * @return The data in GZIP format
+     */
+    public static byte[] compress(final byte[] input)
+    {
+        byte[] buffer = buffers.get();
+
+        /* Header: magic, deflate method, no flags, no time, no extra flags, unknown OS */
+        buffer[0] = (byte) GZIP_MAGIC_1;
+        buffer[1] = (byte) GZIP_MAGIC_2;
+        buffer[2] = Deflater.DEFLATED;
+        Arrays.fill(buffer, 3, GZIP_HEADER_LENGTH, (byte) 0);
+        buffer[9] = (byte) 0xff;
+
+        Deflater deflater = getDeflater(Deflater.DEFAULT_COMPRESSION);
+        buffer = deflate(deflater, input, buffer, GZIP_HEADER_LENGTH);
+        int length = GZIP_HEADER_LENGTH + (int) deflater.getBytesWritten();
+
+        /* Trailer: CRC32 and size of the data, little endian */
+        CRC32 crc = checksums.get();
+        crc.reset();
+        crc.update(input, 0, input.length);
+        buffer = ensureCapacity(buffer, length + GZIP_TRAILER_LENGTH);
+        writeIntLE(buffer, length, (int) crc.getValue());
+        writeIntLE(buffer, length + 4, input.length);
+        length += GZIP_TRAILER_LENGTH;
+
+        byte[] result = Arrays.copyOf(buffer, length);
+        release(buffer);
+        return result;
+    }
+
+    /**
+     * Decompress GZIP data
+     *
+     * @param input Data in GZIP format
+     *
+     * @return The original data
+     *
+     * @throws java.io.IOException If the data is not valid GZIP data
+     */
+    public static byte[] decompress(final byte[] input) throws IOException
+    {
+        if (input.length < GZIP_HEADER_LENGTH + GZIP_TRAILER_LENGTH
+                || (input[0] & 0xff) != GZIP_MAGIC_1 || (input[1] & 0xff) != GZIP_MAGIC_2 || input[2] != Deflater.DEFLATED)
+        {
+            throw new IOException("Not in GZIP format");
+        }
+
+        /* Skip the optional header fields */
+        int flags = input[3] & 0xff;
+        int offset = GZIP_HEADER_LENGTH;
+        try
+        {
+            if ((flags & FEXTRA) != 0)
+            {
+                offset += 2 + ((input[offset] & 0xff) | ((input[offset + 1] & 0xff) << 8));
+            }
+            if ((flags & FNAME) != 0)
+            {
+                while (input[offset++] != 0)
+                {
+                }
+            }
+            if ((flags & FCOMMENT) != 0)
+            {
+                while (input[offset++] != 0)
+                {
+                }
+            }
+            if ((flags & FHCRC) != 0)
+            {
+                offset += 2;
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException e)
+        {
+            throw new IOException("Truncated GZIP header");
+        }
+
+        int trailer = input.length - GZIP_TRAILER_LENGTH;
+        if (offset > trailer)
+        {
+            throw new IOException("Truncated GZIP data");
+        }
+
+        /* The trailer holds the size of the original data, so the result is allocated once at it's exact size */
+        int size = readIntLE(input, trailer + 4);
+        if (size < 0 || size > (long) (trailer - offset) * MAX_DEFLATE_RATIO + 1)
+        {
+            throw new IOException("Invalid GZIP data size: " + size);
+        }
+        byte[] output = new byte[size];
+
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(input, offset, input.length - offset);
+        try
+        {
+            int n = 0;
+            while (!inflater.finished())
+            {
+                int read = inflater.inflate(output, n, size - n);
+                if (read == 0 && !inflater.finished())
+                {
+                    /* The output is full or the input ran out before the end of the data */
+                    throw new IOException("GZIP data does not match it's size");
+                }
+                n += read;
+            }
+
+            if (n != size)
+            {
+                throw new IOException("GZIP data does not match it's size");
+            }
+        }
+        catch (DataFormatException e)
+        {
+            throw new IOException("Invalid GZIP data: " + e.getMessage());
+        }
+
+        CRC32 crc = checksums.get();
+        crc.reset();
+        crc.update(output, 0, size);
+        if ((int) crc.getValue() != readIntLE(input, trailer))
+        {
+            throw new IOException("Corrupt GZIP data: CRC mismatch");
+        }
+
+        return output;
+    }
+
+    /**
+     * Compress data to raw Deflate format, without any header or trailer
+     *
+     * @param input The data
+     * @param level The compression level
+     *
+     * @return The compressed data
+     */
+    public static byte[] deflate(final byte[] input, final int level)
     {
-        try (ByteArrayOutputStream bout = new ByteArrayOutputStream();
-                GZIPOutputStream gzipper = new GZIPOutputStream(bout))
+        return deflate(input, level, null);
+    }
+
+    /**
+     * Compress data to raw Deflate format with a preset dictionary
+     *
+     * @param input      The data
+     * @param level      The compression level
+     * @param dictionary The dictionary, or null for none
+     *
+     * @return The compressed data
+     */
+    public static byte[] deflate(final byte[] input, final int level, final byte[] dictionary)
+    {
+        Deflater deflater = getDeflater(level);
+        if (dictionary != null)
         {
-            gzipper.write(input, 0, input.length);
-            gzipper.close();
-            return Base64.getEncoder().encodeToString(bout.toByteArray());
+            deflater.setDictionary(dictionary);
         }
+
+        byte[] buffer = deflate(deflater, input, buffers.get(), 0);
+        byte[] result = Arrays.copyOf(buffer, (int) deflater.getBytesWritten());
+        release(buffer);
+        return result;
     }
 
-    public static String decompress(final String input) throws IOException
+    /**
+     * Decompress raw Deflate data
+     *
+     * @param input The compressed data
+     *
+     * @return The original data
+     *
+     * @throws java.io.IOException If the data is not valid Deflate data
+     */
+    public static byte[] inflate(final byte[] input) throws IOException
     {
-        byte[] inputBytes = Base64.getDecoder().decode(input);
+        return inflate(input, 0, null);
+    }
 
-        try (GZIPInputStream gzipper = new GZIPInputStream(new ByteArrayInputStream(inputBytes));
-                BufferedReader bf = new BufferedReader(new InputStreamReader(gzipper)))
+    /**
+     * Decompress raw Deflate data compressed with a preset dictionary
+     *
+     * @param input      The compressed data
+     * @param offset     Where the compressed data starts in the input
+     * @param dictionary The dictionary the data was compressed with, or null for none
+     *
+     * @return The original data
+     *
+     * @throws java.io.IOException If the data is not valid Deflate data
+     */
+    public static byte[] inflate(final byte[] input, final int offset, final byte[] dictionary) throws IOException
+    {
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        if (dictionary != null)
+        {
+            inflater.setDictionary(dictionary);
+        }
+        inflater.setInput(input, offset, input.length - offset);
+
+        byte[] buffer = buffers.get();
+        int n = 0;
+        boolean padded = false;
+        try
         {
-            StringBuilder data = new StringBuilder();
-            String line;
-            while ((line = bf.readLine()) != null)
+            while (!inflater.finished())
             {
-                data.append(line);
+                buffer = ensureCapacity(buffer, n + 1);
+                int read = inflater.inflate(buffer, n, buffer.length - n);
+                if (read == 0 && inflater.needsInput())
+                {
+                    if (padded)
+                    {
+                        throw new IOException("Truncated deflate data");
+                    }
+                    inflater.setInput(INFLATE_PADDING);
+                    padded = true;
+                }
+                else if (read == 0 && inflater.needsDictionary())
+                {
+                    throw new IOException("Deflate data needs a dictionary");
+                }
+                n += read;
             }
-            return data.toString();
         }
+        catch (DataFormatException e)
+        {
+            throw new IOException("Invalid deflate data: " + e.getMessage());
+        }
+
+        byte[] result = Arrays.copyOf(buffer, n);
+        release(buffer);
+        return result;
+    }
+
+    /**
+     * @return This thread's Deflater for the given level, reset and ready for use
+     */
+    private static Deflater getDeflater(int level)
+    {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION))
+        {
+            throw new IllegalArgumentException("Invalid deflate level: " + level);
+        }
+
+        Deflater[] levels = deflaters.get();
+        Deflater deflater = levels[level + 1];
+        if (deflater == null)
+        {
+            deflater = new Deflater(level, true);
+            levels[level + 1] = deflater;
+        }
+        else
+        {
+            deflater.reset();
+        }
+
+        return deflater;
+    }
+
+    /**
+     * Deflate all of the input into the buffer from the given position, growing the buffer as needed
+     *
+     * @return The buffer, which may be a new larger buffer
+     */
+    private static byte[] deflate(Deflater deflater, byte[] input, byte[] buffer, int position)
+    {
+        deflater.setInput(input);
+        deflater.finish();
+
+        int n = position;
+        while (!deflater.finished())
+        {
+            buffer = ensureCapacity(buffer, n + 1);
+            n += deflater.deflate(buffer, n, buffer.length - n);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * @return The buffer if it has the capacity needed, otherwise a larger copy of it
+     */
+    private static byte[] ensureCapacity(byte[] buffer, int capacity)
+    {
+        if (capacity <= buffer.length)
+        {
+            return buffer;
+        }
+
+        return Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+    }
+
+    /**
+     * Keep a buffer that grew for reuse by this thread, unless it has grown too large to keep around
+     */
+    private static void release(byte[] buffer)
+    {
+        if (buffer.length <= MAX_RETAINED_BUFFER_SIZE)
+        {
+            buffers.set(buffer);
+        }
+        else
+        {
+            buffers.set(new byte[INITIAL_BUFFER_SIZE]);
+        }
+    }
+
+    private static void writeIntLE(byte[] b, int offset, int value)
+    {
+        b[offset] = (byte) value;
+        b[offset + 1] = (byte) (value >>> 8);
+        b[offset + 2] = (byte) (value >>> 16);
+        b[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static int readIntLE(byte[] b, int offset)
+    {
+        return (b[offset] & 0xff) | ((b[offset + 1] & 0xff) << 8) | ((b[offset + 2] & 0xff) << 16) | ((b[offset + 3] & 0xff) << 24);
     }
 }
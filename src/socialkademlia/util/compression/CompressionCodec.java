@@ -0,0 +1,53 @@
+package socialkademlia.util.compression;
+
+import java.io.IOException;
+
+/**
+ * A compression algorithm used to compress the content of storage entries.
+ *
+ * The codec's id is stored with every entry it compressed, so a codec's id must never change once it's been used.
+ *
+ * @author Joshua Kissoon
+ * @since 20140616
+ */
+public interface CompressionCodec
+{
+
+    /**
+     * @return The id stored with entries compressed using this codec
+     */
+    public byte id();
+
+    /**
+     * @return A readable name for this codec
+     */
+    public String name();
+
+    /**
+     * @return The number of bytes this codec adds to whatever it compresses, for it's headers and framing;
+     *         content that's not much larger than this can't be made smaller
+     */
+    public int overhead();
+
+    /**
+     * Compress some data
+     *
+     * @param input The data to compress
+     *
+     * @return The compressed data
+     *
+     * @throws java.io.IOException
+     */
+    public byte[] compress(byte[] input) throws IOException;
+
+    /**
+     * Decompress data compressed by this codec
+     *
+     * @param input The compressed data
+     *
+     * @return The original data
+     *
+     * @throws java.io.IOException If the data is not valid data for this codec
+     */
+    public byte[] decompress(byte[] input) throws IOException;
+}
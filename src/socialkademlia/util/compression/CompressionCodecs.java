@@ -0,0 +1,84 @@
+package socialkademlia.util.compression;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The registry of compression codecs.
+ *
+ * Codecs are looked up by the id stored with an entry when it is decompressed, so a node can decompress content
+ * compressed with any codec registered here, whichever codecs it uses itself; see CompressionSettings for the codecs a node uses.
+ *
+ * @author Joshua Kissoon
+ * @since 20140616
+ */
+public class CompressionCodecs
+{
+
+    private static final Map<Byte, CompressionCodec> codecs;
+
+    static
+    {
+        codecs = new ConcurrentHashMap<>();
+
+        register(new NoCompressionCodec());
+        register(new GzipCodec());
+        register(new DeflateCodec());
+        register(new LZFCodec());
+        register(new DictionaryDeflateCodec());
+    }
+
+    private CompressionCodecs()
+    {
+    }
+
+    /**
+     * Register a codec, replacing any codec registered with the same id
+     *
+     * @param codec The codec
+     */
+    public static void register(CompressionCodec codec)
+    {
+        codecs.put(codec.id(), codec);
+    }
+
+    /**
+     * @param id The id of the codec
+     *
+     * @return The codec with the given id
+     *
+     * @throws java.io.IOException If no codec is registered with this id
+     */
+    public static CompressionCodec get(byte id) throws IOException
+    {
+        CompressionCodec codec = codecs.get(id);
+        if (codec == null)
+        {
+            throw new IOException("Unknown compression codec: " + id);
+        }
+
+        return codec;
+    }
+
+    /**
+     * @return All registered codecs
+     */
+    public static List<CompressionCodec> getAll()
+    {
+        return new ArrayList<>(codecs.values());
+    }
+
+    /**
+     * @throws IllegalArgumentException If no codec is registered with the id of the given codec
+     */
+    static void checkRegistered(CompressionCodec codec)
+    {
+        if (!codecs.containsKey(codec.id()))
+        {
+            throw new IllegalArgumentException("Compression codec " + codec.name() + " with id " + codec.id() + " is not registered");
+        }
+    }
+}
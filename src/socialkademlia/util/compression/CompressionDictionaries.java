@@ -0,0 +1,59 @@
+package socialkademlia.util.compression;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import kademlia.node.KademliaId;
+
+/**
+ * The compression dictionaries known to a node, by id.
+ *
+ * Content compressed with a dictionary that's not known can't be decompressed;
+ * the node looks up such dictionaries on the DHT before decompressing the content, and adds them here once checked against their id.
+ *
+ * @author Joshua Kissoon
+ * @since 20140618
+ */
+public class CompressionDictionaries
+{
+
+    private final Map<KademliaId, CompressionDictionary> dictionaries;
+
+
+    {
+        dictionaries = new ConcurrentHashMap<>();
+    }
+
+    public void register(CompressionDictionary dictionary)
+    {
+        this.dictionaries.put(dictionary.getId(), dictionary);
+    }
+
+    /**
+     * @param id The id of the dictionary
+     *
+     * @return Whether the dictionary with the given id is known
+     */
+    public boolean contains(KademliaId id)
+    {
+        return this.dictionaries.containsKey(id);
+    }
+
+    /**
+     * @param id The id of the dictionary
+     *
+     * @return The dictionary with the given id
+     *
+     * @throws java.io.IOException If the dictionary is not known
+     */
+    public CompressionDictionary get(KademliaId id) throws IOException
+    {
+        CompressionDictionary dictionary = this.dictionaries.get(id);
+        if (dictionary == null)
+        {
+            throw new IOException("Unknown compression dictionary: " + id.hexRepresentation());
+        }
+
+        return dictionary;
+    }
+}
@@ -0,0 +1,80 @@
+package socialkademlia.util.compression;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import kademlia.node.KademliaId;
+
+/**
+ * A preset dictionary for Deflate, trained on content of one type.
+ *
+ * Small entries of similar content, like JSON status posts, share most of their field names and common values;
+ * compressing them with a dictionary holding these lets Deflate refer back to it instead of repeating them in every entry.
+ *
+ * The id of a dictionary is the SHA-256 digest of it's data, cut to the length of a KademliaId,
+ * so a dictionary fetched from another node can be checked against it's id; no node can make up other data with the same id.
+ *
+ * @author Joshua Kissoon
+ * @since 20140618
+ */
+public class CompressionDictionary
+{
+
+    private final KademliaId id;
+    private final String contentType;
+    private final byte[] data;
+
+    /**
+     * @param contentType The type of content the dictionary was trained on
+     * @param data        The dictionary
+     */
+    public CompressionDictionary(String contentType, byte[] data)
+    {
+        this.id = idOf(data);
+        this.contentType = contentType;
+        this.data = data;
+    }
+
+    /**
+     * @param data The dictionary data
+     *
+     * @return The id of a dictionary with the given data
+     */
+    public static KademliaId idOf(byte[] data)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            return new KademliaId(Arrays.copyOf(digest, KademliaId.ID_LENGTH / 8));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            /* Every Java platform has SHA-256 */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public KademliaId getId()
+    {
+        return this.id;
+    }
+
+    public String getContentType()
+    {
+        return this.contentType;
+    }
+
+    /**
+     * @return The dictionary data; the array is not copied so it should not be modified
+     */
+    public byte[] getData()
+    {
+        return this.data;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CompressionDictionary[id=" + this.id.hexRepresentation() + ",type=" + this.contentType + ",size=" + this.data.length + "]";
+    }
+}
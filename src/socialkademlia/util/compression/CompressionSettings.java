@@ -0,0 +1,78 @@
+package socialkademlia.util.compression;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The compression settings of a node: which codec is used to compress each type of content, and the dictionaries the node knows.
+ *
+ * Each node has settings of it's own, so nodes running in the same JVM don't change each other's codecs or dictionaries.
+ * Content types without a codec of their own are compressed with the default codec, GZIP unless changed.
+ *
+ * @author Joshua Kissoon
+ * @since 20140618
+ */
+public class CompressionSettings
+{
+
+    private final Map<String, CompressionCodec> typeCodecs;
+    private volatile CompressionCodec defaultCodec;
+    private final CompressionDictionaries dictionaries;
+
+
+    {
+        typeCodecs = new ConcurrentHashMap<>();
+        dictionaries = new CompressionDictionaries();
+    }
+
+    public CompressionSettings()
+    {
+        this.defaultCodec = new GzipCodec();
+
+        /* Dictionaries themselves are never compressed with a dictionary, they'd be needed to read themselves */
+        this.typeCodecs.put(DictionaryContent.TYPE, new GzipCodec());
+    }
+
+    /**
+     * @param type The type of content
+     *
+     * @return The codec used to compress content of the given type
+     */
+    public CompressionCodec forType(String type)
+    {
+        CompressionCodec codec = (type == null) ? null : this.typeCodecs.get(type);
+        return (codec == null) ? this.defaultCodec : codec;
+    }
+
+    /**
+     * Set the codec used to compress content of a given type.
+     * Nodes receiving the content need a codec registered in CompressionCodecs with the same id.
+     *
+     * @param type  The type of content
+     * @param codec The codec to use, NoCompressionCodec to store content of this type uncompressed
+     */
+    public void setCodecForType(String type, CompressionCodec codec)
+    {
+        CompressionCodecs.checkRegistered(codec);
+        this.typeCodecs.put(type, codec);
+    }
+
+    /**
+     * Set the codec used to compress content types without a codec of their own.
+     *
+     * @param codec The codec to use
+     */
+    public void setDefaultCodec(CompressionCodec codec)
+    {
+        CompressionCodecs.checkRegistered(codec);
+        this.defaultCodec = codec;
+    }
+
+    /**
+     * @return The dictionaries used to compress and decompress content
+     */
+    public CompressionDictionaries getDictionaries()
+    {
+        return this.dictionaries;
+    }
+}
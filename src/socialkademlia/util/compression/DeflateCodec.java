@@ -0,0 +1,74 @@
+package socialkademlia.util.compression;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+import socialkademlia.util.StringCompressor;
+
+/**
+ * Raw Deflate compression at a given level; without GZIP's header and trailer, which matter for small content.
+ *
+ * The level only affects compression, so data compressed at any level is decompressed by any DeflateCodec.
+ *
+ * @author Joshua Kissoon
+ * @since 20140616
+ */
+public class DeflateCodec implements CompressionCodec
+{
+
+    public static final byte ID = 2;
+
+    static final int DEFLATE_OVERHEAD = 2;
+
+    private final int level;
+
+    /**
+     * @param level The compression level, from Deflater.BEST_SPEED to Deflater.BEST_COMPRESSION
+     */
+    public DeflateCodec(int level)
+    {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)
+        {
+            throw new IllegalArgumentException("Invalid deflate level: " + level);
+        }
+        this.level = level;
+    }
+
+    /**
+     * Use zlib's default level, 6
+     */
+    public DeflateCodec()
+    {
+        this(6);
+    }
+
+    @Override
+    public byte id()
+    {
+        return ID;
+    }
+
+    @Override
+    public String name()
+    {
+        return "deflate-" + this.level;
+    }
+
+    @Override
+    public int overhead()
+    {
+        /* Raw deflate has no header; the stream ends with a block of at least 2 bytes */
+        return DEFLATE_OVERHEAD;
+    }
+
+    @Override
+    public byte[] compress(byte[] input)
+    {
+        return StringCompressor.deflate(input, this.level);
+    }
+
+    @Override
+    public byte[] decompress(byte[] input) throws IOException
+    {
+        return StringCompressor.inflate(input);
+    }
+}
@@ -0,0 +1,123 @@
+package socialkademlia.util.compression;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import kademlia.dht.KadContent;
+import kademlia.node.KademliaId;
+import socialkademlia.util.serializer.Serializers;
+
+/**
+ * A compression dictionary stored on the DHT, so nodes can fetch dictionaries used to compress content they receive.
+ *
+ * The key of a dictionary is derived from it's id, so a dictionary can be found knowing only it's id.
+ *
+ * @author Joshua Kissoon
+ * @since 20140618
+ */
+public class DictionaryContent implements KadContent
+{
+
+    public static final transient String TYPE = "CompressionDictionary";
+
+    private KademliaId key;
+    private String ownerId;
+    private String contentType;
+    private String data;    // Base64, since this content is stored as JSON
+    private long createTs;
+    private long updateTs;
+
+    public DictionaryContent()
+    {
+    }
+
+    /**
+     * @param ownerId    The owner of the node that trained the dictionary
+     * @param dictionary The dictionary
+     */
+    public DictionaryContent(String ownerId, CompressionDictionary dictionary)
+    {
+        this.key = keyFor(dictionary.getId());
+        this.ownerId = ownerId;
+        this.contentType = dictionary.getContentType();
+        this.data = Base64.getEncoder().encodeToString(dictionary.getData());
+        this.createTs = this.updateTs = System.currentTimeMillis() / 1000L;
+    }
+
+    /**
+     * @param dictionaryId The id of a dictionary
+     *
+     * @return The key under which the dictionary is stored on the DHT
+     */
+    public static KademliaId keyFor(KademliaId dictionaryId)
+    {
+        try
+        {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((TYPE + ":" + dictionaryId.hexRepresentation()).getBytes(StandardCharsets.UTF_8));
+            return new KademliaId(digest);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            /* Every Java platform has SHA-1 */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The dictionary held by this content
+     */
+    public CompressionDictionary toDictionary()
+    {
+        return new CompressionDictionary(this.contentType, Base64.getDecoder().decode(this.data));
+    }
+
+    @Override
+    public KademliaId getKey()
+    {
+        return this.key;
+    }
+
+    @Override
+    public String getType()
+    {
+        return TYPE;
+    }
+
+    @Override
+    public long getCreatedTimestamp()
+    {
+        return this.createTs;
+    }
+
+    @Override
+    public long getLastUpdatedTimestamp()
+    {
+        return this.updateTs;
+    }
+
+    @Override
+    public String getOwnerId()
+    {
+        return this.ownerId;
+    }
+
+    @Override
+    public byte[] toSerializedForm()
+    {
+        return Serializers.gson().toJson(this).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public DictionaryContent fromSerializedForm(byte[] serialized)
+    {
+        return Serializers.gson().fromJson(new String(serialized, StandardCharsets.UTF_8), DictionaryContent.class);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DictionaryContent[key=" + this.key + ",type=" + this.contentType + ",owner=" + this.ownerId + "]";
+    }
+}
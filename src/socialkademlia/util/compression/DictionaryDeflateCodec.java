@@ -0,0 +1,132 @@
+package socialkademlia.util.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+import kademlia.node.KademliaId;
+import socialkademlia.util.StringCompressor;
+
+/**
+ * Raw Deflate compression with a preset dictionary trained for the type of content.
+ *
+ * The compressed data starts with the id of the dictionary (20 bytes),
+ * so data compressed with any dictionary is decompressed given the dictionaries of the node, see CompressionSettings.
+ *
+ * @author Joshua Kissoon
+ * @since 20140618
+ */
+public class DictionaryDeflateCodec implements CompressionCodec
+{
+
+    public static final byte ID = 4;
+
+    private static final int ID_LENGTH = KademliaId.ID_LENGTH / 8;
+
+    private final CompressionDictionary dictionary;
+    private final int level;
+
+    /**
+     * @param dictionary The dictionary to compress with
+     * @param level      The compression level
+     */
+    public DictionaryDeflateCodec(CompressionDictionary dictionary, int level)
+    {
+        this.dictionary = dictionary;
+        this.level = level;
+    }
+
+    public DictionaryDeflateCodec(CompressionDictionary dictionary)
+    {
+        this(dictionary, 6);
+    }
+
+    /**
+     * A codec that can only decompress, given the dictionaries to find the dictionary recorded in the data in
+     */
+    public DictionaryDeflateCodec()
+    {
+        this(null, 6);
+    }
+
+    @Override
+    public byte id()
+    {
+        return ID;
+    }
+
+    @Override
+    public String name()
+    {
+        return "deflate-dict-" + this.level;
+    }
+
+    @Override
+    public int overhead()
+    {
+        /* The dictionary id ahead of the raw deflate stream */
+        return ID_LENGTH + DeflateCodec.DEFLATE_OVERHEAD;
+    }
+
+    @Override
+    public byte[] compress(byte[] input) throws IOException
+    {
+        if (this.dictionary == null)
+        {
+            throw new IOException("No dictionary to compress with");
+        }
+
+        byte[] deflated = StringCompressor.deflate(input, this.level, this.dictionary.getData());
+
+        byte[] output = new byte[ID_LENGTH + deflated.length];
+        System.arraycopy(this.dictionary.getId().getBytes(), 0, output, 0, ID_LENGTH);
+        System.arraycopy(deflated, 0, output, ID_LENGTH, deflated.length);
+        return output;
+    }
+
+    /**
+     * Decompress data compressed with this codec's own dictionary
+     */
+    @Override
+    public byte[] decompress(byte[] input) throws IOException
+    {
+        KademliaId id = dictionaryId(input);
+        if (this.dictionary == null || !this.dictionary.getId().equals(id))
+        {
+            throw new IOException("Unknown compression dictionary: " + id.hexRepresentation());
+        }
+
+        return StringCompressor.inflate(input, ID_LENGTH, this.dictionary.getData());
+    }
+
+    /**
+     * Decompress data compressed with any of the given dictionaries
+     *
+     * @param input        The compressed data
+     * @param dictionaries The dictionaries known
+     *
+     * @return The original data
+     *
+     * @throws java.io.IOException If the data is not valid or the dictionary it was compressed with is not known
+     */
+    public byte[] decompress(byte[] input, CompressionDictionaries dictionaries) throws IOException
+    {
+        CompressionDictionary dict = dictionaries.get(dictionaryId(input));
+        return StringCompressor.inflate(input, ID_LENGTH, dict.getData());
+    }
+
+    /**
+     * @param input Data compressed with this codec
+     *
+     * @return The id of the dictionary the data was compressed with
+     *
+     * @throws java.io.IOException If the data is too short to hold a dictionary id
+     */
+    public static KademliaId dictionaryId(byte[] input) throws IOException
+    {
+        if (input.length < ID_LENGTH)
+        {
+            throw new IOException("Invalid dictionary compressed data: missing dictionary id");
+        }
+
+        return new KademliaId(Arrays.copyOf(input, ID_LENGTH));
+    }
+}
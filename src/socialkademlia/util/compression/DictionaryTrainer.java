@@ -0,0 +1,180 @@
+package socialkademlia.util.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Trains a compression dictionary from samples of content.
+ *
+ * Every sample is cut into overlapping segments; a segment's score is the number of samples containing each of it's 8 byte sequences,
+ * summed over the sequences not yet in the dictionary. The best segments are picked greedily until the dictionary is full.
+ * Deflate finds matches closer to the data more cheaply, so the best segments are placed at the end of the dictionary.
+ *
+ * @author Joshua Kissoon
+ * @since 20140618
+ */
+public class DictionaryTrainer
+{
+
+    /* Deflate can only refer back 32KB, a larger dictionary would never be used in full */
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int KMER_LENGTH = 8;
+    private static final int SEGMENT_LENGTH = 32;
+    private static final int SEGMENT_STEP = 8;
+
+    private DictionaryTrainer()
+    {
+    }
+
+    /**
+     * Train a dictionary
+     *
+     * @param samples The samples of content
+     * @param maxSize The maximum size of the dictionary, at most MAX_DICTIONARY_SIZE
+     *
+     * @return The dictionary data, empty if the samples have nothing in common
+     */
+    public static byte[] train(List<byte[]> samples, int maxSize)
+    {
+        maxSize = Math.min(maxSize, MAX_DICTIONARY_SIZE);
+
+        /* How many samples contain each sequence */
+        Map<Long, Integer> frequency = new HashMap<>();
+        for (byte[] sample : samples)
+        {
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i + KMER_LENGTH <= sample.length; i++)
+            {
+                seen.add(kmer(sample, i));
+            }
+            for (Long k : seen)
+            {
+                frequency.merge(k, 1, Integer::sum);
+            }
+        }
+
+        /* Candidate segments, best first; only sequences found in more than one sample count */
+        PriorityQueue<Segment> candidates = new PriorityQueue<>();
+        for (byte[] sample : samples)
+        {
+            for (int start = 0; start < sample.length; start += SEGMENT_STEP)
+            {
+                int end = Math.min(sample.length, start + SEGMENT_LENGTH);
+                Segment s = new Segment(sample, start, end);
+                s.score = score(s, frequency, null);
+                if (s.score > 0)
+                {
+                    candidates.add(s);
+                }
+                if (end == sample.length)
+                {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Pick segments greedily; a segment's score only goes down as sequences are added to the dictionary,
+         * so it's rescored when it comes to the top and only picked if it's still the best.
+         */
+        Set<Long> covered = new HashSet<>();
+        List<Segment> picked = new ArrayList<>();
+        int size = 0;
+        while (!candidates.isEmpty() && size < maxSize)
+        {
+            Segment s = candidates.poll();
+            int current = score(s, frequency, covered);
+            if (current <= 0)
+            {
+                continue;
+            }
+            if (current < s.score && !candidates.isEmpty() && current < candidates.peek().score)
+            {
+                s.score = current;
+                candidates.add(s);
+                continue;
+            }
+
+            /* The last segment may not fit in full */
+            s.end = Math.min(s.end, s.start + maxSize - size);
+            for (int i = s.start; i + KMER_LENGTH <= s.end; i++)
+            {
+                covered.add(kmer(s.sample, i));
+            }
+            picked.add(s);
+            size += s.end - s.start;
+        }
+
+        /* The best segments go last, closest to the data */
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(size);
+        for (int i = picked.size() - 1; i >= 0; i--)
+        {
+            Segment s = picked.get(i);
+            dictionary.write(s.sample, s.start, s.end - s.start);
+        }
+
+        return dictionary.toByteArray();
+    }
+
+    /**
+     * @return The sum of the frequencies of the sequences in the segment that are not covered
+     */
+    private static int score(Segment s, Map<Long, Integer> frequency, Set<Long> covered)
+    {
+        int score = 0;
+        for (int i = s.start; i + KMER_LENGTH <= s.end; i++)
+        {
+            long k = kmer(s.sample, i);
+            int f = frequency.getOrDefault(k, 0);
+            if (f > 1 && (covered == null || !covered.contains(k)))
+            {
+                score += f;
+            }
+        }
+
+        return score;
+    }
+
+    private static long kmer(byte[] data, int offset)
+    {
+        long k = 0;
+        for (int i = 0; i < KMER_LENGTH; i++)
+        {
+            k = (k << 8) | (data[offset + i] & 0xff);
+        }
+
+        return k;
+    }
+
+    /**
+     * A part of a sample that could go into the dictionary
+     */
+    private static class Segment implements Comparable<Segment>
+    {
+
+        private final byte[] sample;
+        private final int start;
+        private int end;
+        private int score;
+
+        public Segment(byte[] sample, int start, int end)
+        {
+            this.sample = sample;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int compareTo(Segment o)
+        {
+            return Integer.compare(o.score, this.score);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package socialkademlia.util.compression;
+
+import java.io.IOException;
+import socialkademlia.util.StringCompressor;
+
+/**
+ * GZIP compression; the codec entries have always been compressed with.
+ *
+ * @author Joshua Kissoon
+ * @since 20140616
+ */
+public class GzipCodec implements CompressionCodec
+{
+
+    public static final byte ID = 1;
+
+    @Override
+    public byte id()
+    {
+        return ID;
+    }
+
+    @Override
+    public String name()
+    {
+        return "gzip";
+    }
+
+    @Override
+    public int overhead()
+    {
+        /* A 10 byte header and an 8 byte trailer around the deflate stream, which ends with a block of at least 2 bytes */
+        return 10 + 8 + DeflateCodec.DEFLATE_OVERHEAD;
+    }
+
+    @Override
+    public byte[] compress(byte[] input)
+    {
+        return StringCompressor.compress(input);
+    }
+
+    @Override
+    public byte[] decompress(byte[] input) throws IOException
+    {
+        return StringCompressor.decompress(input);
+    }
+}
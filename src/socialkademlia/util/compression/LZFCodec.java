@@ -0,0 +1,230 @@
+package socialkademlia.util.compression;
+
+import java.io.IOException;
+
+/**
+ * A pure Java implementation of the LZF algorithm; a fast LZ77 style codec that compresses less than Deflate
+ * but is several times faster at both compression and decompression.
+ *
+ * The compressed data starts with the length of the original data (4 bytes, big endian), followed by the LZF blocks:
+ * - a control byte below 32 is followed by (control + 1) literal bytes
+ * - otherwise the top 3 bits of the control byte are the match length - 2 (7 means an extra length byte follows),
+ * the low 5 bits and the next byte are the distance back to the match - 1.
+ *
+ * @author Joshua Kissoon
+ * @since 20140616
+ */
+public class LZFCodec implements CompressionCodec
+{
+
+    public static final byte ID = 3;
+
+    private static final int MIN_HASH_BITS = 8;
+    private static final int MAX_HASH_BITS = 14;
+    private static final int MAX_LITERAL = 32;
+    private static final int MAX_OFFSET = 1 << 13;
+    private static final int MAX_MATCH = (1 << 8) + (1 << 3);  // 264
+
+    /* The longest match takes 3 bytes, so LZF can't compress data to less than 1/88 of it's size */
+    private static final int MAX_RATIO = MAX_MATCH / 3;
+
+    @Override
+    public byte id()
+    {
+        return ID;
+    }
+
+    @Override
+    public String name()
+    {
+        return "lzf";
+    }
+
+    @Override
+    public int overhead()
+    {
+        /* The length of the original data, and at least one control byte */
+        return 4 + 1;
+    }
+
+    @Override
+    public byte[] compress(byte[] in)
+    {
+        final int n = in.length;
+
+        /* Worst case, everything is a literal: one control byte for every 32 literals */
+        byte[] out = new byte[4 + n + (n / MAX_LITERAL) + 1];
+        out[0] = (byte) (n >>> 24);
+        out[1] = (byte) (n >>> 16);
+        out[2] = (byte) (n >>> 8);
+        out[3] = (byte) n;
+
+        /* The last position + 1 at which each 3 byte sequence was seen; small content gets a small table, it's cleared on every call */
+        final int bits = Math.max(MIN_HASH_BITS, Math.min(MAX_HASH_BITS, 32 - Integer.numberOfLeadingZeros(n)));
+        int[] table = new int[1 << bits];
+
+        int ip = 0;
+        int op = 4;
+        int literals = 0;
+        int control = op++;
+
+        while (ip < n - 2)
+        {
+            int h = hash(in[ip], in[ip + 1], in[ip + 2], bits);
+            int ref = table[h] - 1;
+            table[h] = ip + 1;
+
+            int off = ip - ref - 1;
+            if (ref >= 0 && off < MAX_OFFSET
+                    && in[ref] == in[ip] && in[ref + 1] == in[ip + 1] && in[ref + 2] == in[ip + 2])
+            {
+                int maxLen = Math.min(MAX_MATCH, n - ip);
+                int len = 3;
+                while (len < maxLen && in[ref + len] == in[ip + len])
+                {
+                    len++;
+                }
+
+                /* Close the literal run, or drop it's control byte if it's empty */
+                if (literals > 0)
+                {
+                    out[control] = (byte) (literals - 1);
+                }
+                else
+                {
+                    op--;
+                }
+
+                int l = len - 2;
+                if (l < 7)
+                {
+                    out[op++] = (byte) ((l << 5) | (off >>> 8));
+                }
+                else
+                {
+                    out[op++] = (byte) ((7 << 5) | (off >>> 8));
+                    out[op++] = (byte) (l - 7);
+                }
+                out[op++] = (byte) off;
+
+                ip += len;
+
+                /* Remember the position right before the next one so runs are found */
+                if (ip < n - 2)
+                {
+                    table[hash(in[ip - 1], in[ip], in[ip + 1], bits)] = ip;
+                }
+
+                literals = 0;
+                control = op++;
+            }
+            else
+            {
+                out[op++] = in[ip++];
+                if (++literals == MAX_LITERAL)
+                {
+                    out[control] = (byte) (MAX_LITERAL - 1);
+                    literals = 0;
+                    control = op++;
+                }
+            }
+        }
+
+        /* The last bytes can't start a match */
+        while (ip < n)
+        {
+            out[op++] = in[ip++];
+            if (++literals == MAX_LITERAL)
+            {
+                out[control] = (byte) (MAX_LITERAL - 1);
+                literals = 0;
+                control = op++;
+            }
+        }
+
+        if (literals > 0)
+        {
+            out[control] = (byte) (literals - 1);
+        }
+        else
+        {
+            op--;
+        }
+
+        byte[] result = new byte[op];
+        System.arraycopy(out, 0, result, 0, op);
+        return result;
+    }
+
+    @Override
+    public byte[] decompress(byte[] in) throws IOException
+    {
+        if (in.length < 4)
+        {
+            throw new IOException("Invalid LZF data: missing length");
+        }
+
+        int n = ((in[0] & 0xff) << 24) | ((in[1] & 0xff) << 16) | ((in[2] & 0xff) << 8) | (in[3] & 0xff);
+        if (n < 0 || n > (long) (in.length - 4) * MAX_RATIO)
+        {
+            throw new IOException("Invalid LZF data: bad length " + n);
+        }
+
+        byte[] out = new byte[n];
+        int ip = 4;
+        int op = 0;
+
+        try
+        {
+            while (ip < in.length)
+            {
+                int ctrl = in[ip++] & 0xff;
+                if (ctrl < MAX_LITERAL)
+                {
+                    int len = ctrl + 1;
+                    System.arraycopy(in, ip, out, op, len);
+                    ip += len;
+                    op += len;
+                }
+                else
+                {
+                    int len = ctrl >>> 5;
+                    if (len == 7)
+                    {
+                        len += in[ip++] & 0xff;
+                    }
+                    len += 2;
+
+                    int ref = op - ((ctrl & 0x1f) << 8) - (in[ip++] & 0xff) - 1;
+                    if (ref < 0)
+                    {
+                        throw new IOException("Invalid LZF data: back reference before the start of the data");
+                    }
+
+                    /* The match may overlap what's being written, so copy byte by byte */
+                    for (int i = 0; i < len; i++)
+                    {
+                        out[op++] = out[ref++];
+                    }
+                }
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException e)
+        {
+            throw new IOException("Invalid LZF data: truncated or too long");
+        }
+
+        if (op != n)
+        {
+            throw new IOException("Invalid LZF data: expected " + n + " bytes but got " + op);
+        }
+
+        return out;
+    }
+
+    private static int hash(byte b0, byte b1, byte b2, int bits)
+    {
+        int v = ((b0 & 0xff) << 16) | ((b1 & 0xff) << 8) | (b2 & 0xff);
+        return (v * 0x9E3779B1) >>> (32 - bits);
+    }
+}
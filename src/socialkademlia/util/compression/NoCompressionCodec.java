@@ -0,0 +1,44 @@
+package socialkademlia.util.compression;
+
+/**
+ * A codec that leaves data as is; an entry recorded with this codec is not compressed.
+ *
+ * @author Joshua Kissoon
+ * @since 20140616
+ */
+public class NoCompressionCodec implements CompressionCodec
+{
+
+    public static final byte ID = 0;
+
+    @Override
+    public byte id()
+    {
+        return ID;
+    }
+
+    @Override
+    public String name()
+    {
+        return "none";
+    }
+
+    @Override
+    public int overhead()
+    {
+        /* The content is kept as it is */
+        return 0;
+    }
+
+    @Override
+    public byte[] compress(byte[] input)
+    {
+        return input;
+    }
+
+    @Override
+    public byte[] decompress(byte[] input)
+    {
+        return input;
+    }
+}
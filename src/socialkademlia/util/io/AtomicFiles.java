@@ -0,0 +1,155 @@
+package socialkademlia.util.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes files atomically: the file is written to a temporary file in the same folder, which is then renamed over the file.
+ * A reader, or the node after a crash, sees either the old file or the complete new one, never a file that was cut short.
+ *
+ * When the write is synced, the temporary file is synced before it's renamed, and the folder is synced after it's renamed
+ * through the SyncScheduler, so writers in the same folder share the sync of the folder.
+ *
+ * Temporary files are named after the file with a ".tmp" suffix; they're only left behind by a crash.
+ *
+ * @author Joshua Kissoon
+ * @since 20140623
+ */
+public class AtomicFiles
+{
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private AtomicFiles()
+    {
+    }
+
+    /**
+     * Writes the content of a file to a stream
+     */
+    public interface Content
+    {
+
+        public void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Write a file atomically
+     *
+     * @param file The file to write
+     * @param data The new content of the file
+     * @param sync Whether the file is durable once this returns
+     *
+     * @throws java.io.IOException
+     */
+    public static void write(File file, byte[] data, boolean sync) throws IOException
+    {
+        File tmp = createTempFile(file);
+        try
+        {
+            try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE))
+            {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+                if (sync)
+                {
+                    channel.force(true);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            tmp.delete();
+            throw e;
+        }
+
+        replace(tmp, file, sync);
+    }
+
+    /**
+     * Write a file atomically from a stream
+     *
+     * @param file    The file to write
+     * @param content Writes the new content of the file; it may close the stream
+     * @param sync    Whether the file is durable once this returns
+     *
+     * @throws java.io.IOException
+     */
+    public static void write(File file, Content content, boolean sync) throws IOException
+    {
+        File tmp = createTempFile(file);
+        try
+        {
+            try (FileOutputStream fout = new FileOutputStream(tmp))
+            {
+                /* The content may close the stream, which must leave the file open until it's synced */
+                OutputStream unclosable = new FilterOutputStream(fout)
+                {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException
+                    {
+                        this.out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException
+                    {
+                        this.flush();
+                    }
+                };
+
+                DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(unclosable, BUFFER_SIZE));
+                content.writeTo(dout);
+                dout.flush();
+                if (sync)
+                {
+                    fout.getFD().sync();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            tmp.delete();
+            throw e;
+        }
+
+        replace(tmp, file, sync);
+    }
+
+    private static File createTempFile(File file) throws IOException
+    {
+        File folder = file.getAbsoluteFile().getParentFile();
+        return Files.createTempFile(folder.toPath(), file.getName() + ".", ".tmp").toFile();
+    }
+
+    private static void replace(File tmp, File file, boolean sync) throws IOException
+    {
+        try
+        {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            tmp.delete();
+            throw e;
+        }
+
+        if (sync)
+        {
+            SyncScheduler.shared().syncFolder(file.getAbsoluteFile().getParentFile().toPath());
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package socialkademlia.util.io;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Syncs files to disk on behalf of many writers at once (group commit).
+ *
+ * A writer asks for a file, folder or channel to be synced and waits until it has been.
+ * Syncs are done one batch at a time on a single background thread; every request for the same target
+ * made while the current batch is being synced is answered by one sync in the next batch.
+ * Writers to a shared channel, such as a segment or journal, then share a single fsync,
+ * and writers creating or renaming files in the same folder share the fsync of the folder.
+ * A file of it's own is best synced by it's writer, since no one else is waiting for it.
+ *
+ * @author Joshua Kissoon
+ * @since 20140623
+ */
+public class SyncScheduler
+{
+
+    private static final SyncScheduler shared = new SyncScheduler();
+
+    /**
+     * Makes a target durable
+     */
+    public interface Sync
+    {
+
+        public void sync() throws IOException;
+    }
+
+    /**
+     * The requests waiting for one target to be synced
+     */
+    private static class Batch
+    {
+
+        private final Sync sync;
+        private final CompletableFuture<Void> done;
+
+        public Batch(Sync sync)
+        {
+            this.sync = sync;
+            this.done = new CompletableFuture<>();
+        }
+    }
+
+    /* The requests for the next batch, by target; guarded by itself */
+    private Map<Object, Batch> pending;
+
+    /* Statistics */
+    private long numRequests;
+    private long numSyncs;
+
+
+    {
+        pending = new LinkedHashMap<>();
+        numRequests = 0;
+        numSyncs = 0;
+    }
+
+    private SyncScheduler()
+    {
+        Thread t = new Thread(this::run, "SocialKademlia-Syncer");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * @return The scheduler shared by all stores and nodes in this JVM
+     */
+    public static SyncScheduler shared()
+    {
+        return shared;
+    }
+
+    /**
+     * Sync a target, waiting until a sync started after this call has completed.
+     *
+     * @param target Identifies what's synced; requests for equal targets share a sync
+     * @param sync   How the target is synced
+     *
+     * @throws java.io.IOException If the sync failed
+     */
+    public void sync(Object target, Sync sync) throws IOException
+    {
+        Batch batch;
+        synchronized (this)
+        {
+            batch = this.pending.computeIfAbsent(target, (Object t) -> new Batch(sync));
+            this.numRequests++;
+            this.notify();
+        }
+
+        try
+        {
+            batch.done.join();
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Sync a folder, making files created, renamed or deleted in it durable.
+     * Not every platform can sync a folder; where it can't this does nothing.
+     *
+     * @param folder The folder
+     *
+     * @throws java.io.IOException
+     */
+    public void syncFolder(Path folder) throws IOException
+    {
+        this.sync(folder, () ->
+        {
+            FileChannel channel;
+            try
+            {
+                channel = FileChannel.open(folder, StandardOpenOption.READ);
+            }
+            catch (IOException e)
+            {
+                /* Folders can't be opened on this platform */
+                return;
+            }
+
+            try
+            {
+                channel.force(true);
+            }
+            finally
+            {
+                channel.close();
+            }
+        });
+    }
+
+    /**
+     * Sync what was written to a channel; a channel closed meanwhile must have been forced before it was closed.
+     *
+     * @param channel The channel
+     *
+     * @throws java.io.IOException
+     */
+    public void syncChannel(FileChannel channel) throws IOException
+    {
+        this.sync(channel, () ->
+        {
+            try
+            {
+                channel.force(false);
+            }
+            catch (ClosedChannelException e)
+            {
+                /* Forced when it was closed */
+            }
+        });
+    }
+
+    /**
+     * @return The number of syncs requested
+     */
+    public synchronized long numRequests()
+    {
+        return this.numRequests;
+    }
+
+    /**
+     * @return The number of syncs done; fewer than requested when requests were batched
+     */
+    public synchronized long numSyncs()
+    {
+        return this.numSyncs;
+    }
+
+    private void run()
+    {
+        while (true)
+        {
+            Map<Object, Batch> batches;
+            synchronized (this)
+            {
+                while (this.pending.isEmpty())
+                {
+                    try
+                    {
+                        this.wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        /* Keep waiting, we're a daemon */
+                    }
+                }
+
+                batches = this.pending;
+                this.pending = new LinkedHashMap<>();
+                this.numSyncs += batches.size();
+            }
+
+            for (Batch b : batches.values())
+            {
+                try
+                {
+                    b.sync.sync();
+                    b.done.complete(null);
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    b.done.completeExceptionally(e);
+                }
+            }
+        }
+    }
+}
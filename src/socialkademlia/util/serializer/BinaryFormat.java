@@ -0,0 +1,165 @@
+package socialkademlia.util.serializer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import kademlia.node.KademliaId;
+
+/**
+ * Helpers for writing and reading the compact binary forms used on the wire and on disk.
+ *
+ * - Numbers are written as unsigned varints: 7 bits per byte, low bits first, the top bit set on every byte but the last.
+ * - Strings are written as a varint of their UTF-8 length + 1 followed by the bytes; 0 means null.
+ *   Strings are ids and names, so longer strings than MAX_STRING_LENGTH are refused rather than allocated.
+ * - Keys are written as their raw bytes, they're always the same length.
+ *
+ * Strings read are interned; owner ids and content types repeat across every entry a node stores,
+ * so all metadata shares one copy of each instead of keeping one per entry.
+ *
+ * @author Joshua Kissoon
+ * @since 20140619
+ */
+public class BinaryFormat
+{
+
+    /* Interning stops once this many strings are held, so an attacker can't grow it without bound */
+    private static final int MAX_INTERNED_STRINGS = 4096;
+    private static final int MAX_INTERNED_LENGTH = 128;
+
+    /* The longest string read, in UTF-8 bytes; lengths are read from the network, so a bad one mustn't allocate gigabytes */
+    public static final int MAX_STRING_LENGTH = 64 * 1024;
+
+    private static final Map<String, String> strings = new ConcurrentHashMap<>();
+
+    private BinaryFormat()
+    {
+    }
+
+    public static void writeVarLong(DataOutputStream out, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInputStream in) throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    public static void writeVarInt(DataOutputStream out, int value) throws IOException
+    {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Read a varint that's used as a length or count
+     *
+     * @throws java.io.IOException If the value is not a valid non negative int
+     */
+    public static int readVarInt(DataInputStream in) throws IOException
+    {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE)
+        {
+            throw new IOException("Invalid varint length: " + value);
+        }
+
+        return (int) value;
+    }
+
+    /**
+     * @throws java.io.IOException If the string is longer than MAX_STRING_LENGTH, since it couldn't be read back
+     */
+    public static void writeString(DataOutputStream out, String s) throws IOException
+    {
+        if (s == null)
+        {
+            out.writeByte(0);
+            return;
+        }
+
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (b.length > MAX_STRING_LENGTH)
+        {
+            throw new IOException("String too long: " + b.length + " bytes");
+        }
+        writeVarInt(out, b.length + 1);
+        out.write(b);
+    }
+
+    /**
+     * @throws java.io.IOException If the string is longer than MAX_STRING_LENGTH
+     */
+    public static String readString(DataInputStream in) throws IOException
+    {
+        int length = readVarInt(in);
+        if (length == 0)
+        {
+            return null;
+        }
+
+        if (length - 1 > MAX_STRING_LENGTH)
+        {
+            throw new IOException("String too long: " + (length - 1) + " bytes");
+        }
+
+        byte[] b = new byte[length - 1];
+        in.readFully(b);
+        return intern(new String(b, StandardCharsets.UTF_8));
+    }
+
+    public static void writeKey(DataOutputStream out, KademliaId key) throws IOException
+    {
+        out.write(key.getBytes());
+    }
+
+    public static KademliaId readKey(DataInputStream in) throws IOException
+    {
+        byte[] b = new byte[KademliaId.ID_LENGTH / 8];
+        in.readFully(b);
+        return new KademliaId(b);
+    }
+
+    /**
+     * @return The shared copy of the string if there is one, otherwise the string itself
+     */
+    private static String intern(String s)
+    {
+        if (s.length() > MAX_INTERNED_LENGTH)
+        {
+            return s;
+        }
+
+        String shared = strings.get(s);
+        if (shared != null)
+        {
+            return shared;
+        }
+
+        if (strings.size() < MAX_INTERNED_STRINGS)
+        {
+            shared = strings.putIfAbsent(s, s);
+            return shared == null ? s : shared;
+        }
+
+        return s;
+    }
+}
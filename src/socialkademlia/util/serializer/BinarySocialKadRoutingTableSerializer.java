@@ -0,0 +1,95 @@
+package socialkademlia.util.serializer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import kademlia.KadConfiguration;
+import kademlia.node.Node;
+import kademlia.routing.Contact;
+import kademlia.util.serializer.KadSerializer;
+import socialkademlia.routing.Connection;
+import socialkademlia.routing.JSocialKademliaRoutingTable;
+import socialkademlia.routing.SocialKademliaRoutingTable;
+
+/**
+ * A KadSerializer that writes the routing table as a binary snapshot; see SnapshotFormat.
+ *
+ * Body: number of contacts (varint), the node of each contact,
+ * number of connections (varint), the actor id (string) and node of each connection.
+ * Nodes are written in the same form as in messages. The local node is saved separately by the node, so it's given when reading.
+ *
+ * Contacts and connections are re-added when the table is read, so they're seen as of the time the node starts.
+ *
+ * Like the JSON serializer, this serializer closes the stream when done.
+ *
+ * @author Joshua Kissoon
+ * @since 20140621
+ */
+public class BinarySocialKadRoutingTableSerializer implements KadSerializer<SocialKademliaRoutingTable>
+{
+
+    public static final int MAGIC = 0x534B5254;    // "SKRT"
+
+    private final Node localNode;
+    private final KadConfiguration config;
+
+    /**
+     * Initialize the class
+     *
+     * @param localNode The node the routing table read belongs to; not needed for writing
+     * @param config
+     */
+    public BinarySocialKadRoutingTableSerializer(Node localNode, KadConfiguration config)
+    {
+        this.localNode = localNode;
+        this.config = config;
+    }
+
+    @Override
+    public void write(SocialKademliaRoutingTable data, DataOutputStream out) throws IOException
+    {
+        SnapshotFormat.Writer w = SnapshotFormat.write(out, MAGIC);
+
+        List<Contact> contacts = data.getAllContacts();
+        BinaryFormat.writeVarInt(w, contacts.size());
+        for (Contact c : contacts)
+        {
+            c.getNode().toStream(w);
+        }
+
+        List<Connection> connections = data.getConnections();
+        BinaryFormat.writeVarInt(w, connections.size());
+        for (Connection c : connections)
+        {
+            BinaryFormat.writeString(w, c.getConnectionId());
+            c.getNode().toStream(w);
+        }
+
+        w.finish();
+    }
+
+    @Override
+    public SocialKademliaRoutingTable read(DataInputStream in) throws IOException, ClassNotFoundException
+    {
+        SnapshotFormat.Reader r = SnapshotFormat.read(in, MAGIC);
+
+        SocialKademliaRoutingTable tbl = new JSocialKademliaRoutingTable(this.localNode, this.config);
+
+        int contacts = BinaryFormat.readVarInt(r);
+        for (int i = 0; i < contacts; i++)
+        {
+            tbl.insert(new Node(r));
+        }
+
+        int connections = BinaryFormat.readVarInt(r);
+        for (int i = 0; i < connections; i++)
+        {
+            String actorId = BinaryFormat.readString(r);
+            tbl.insertConnection(actorId, new Node(r));
+        }
+
+        r.finish();
+        return tbl;
+    }
+}
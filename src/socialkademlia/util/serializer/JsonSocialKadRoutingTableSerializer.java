@@ -55,7 +55,7 @@ public class JsonSocialKadRoutingTableSerializer implements KadSerializer<Social
     
     
     {
-        gson = new Gson();
+        gson = Serializers.gson();
     }
 
     /**
@@ -1,7 +1,6 @@
 package socialkademlia.util.serializer;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 import java.io.DataInputStream;
@@ -9,8 +8,6 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
-import java.lang.reflect.Type;
-import java.util.List;
 import kademlia.util.serializer.KadSerializer;
 import socialkademlia.dht.JSocialKademliaDHT;
 import socialkademlia.dht.JSocialKademliaStorageEntryMetadata;
@@ -45,15 +42,10 @@ public class JsonSocialKademliaDHTSerializer implements KadSerializer<SocialKade
 {
 
     private final Gson gson;
-    private final Type storageEntriesCollectionType;
 
     
     {
-        gson = new Gson();
-
-        storageEntriesCollectionType = new TypeToken<List<JSocialKademliaStorageEntryMetadata>>()
-        {
-        }.getType();
+        gson = Serializers.gson();
     }
 
     @Override
@@ -66,8 +58,13 @@ public class JsonSocialKademliaDHTSerializer implements KadSerializer<SocialKade
             /* Write the basic DHT */
             gson.toJson(data, JSocialKademliaDHT.class, writer);
 
-            /* Now Store the Entries  */
-            gson.toJson(data.getStorageEntries(), this.storageEntriesCollectionType, writer);
+            /* Now Store the Entries, one at a time so they're not copied into a list first */
+            writer.beginArray();
+            for (SocialKademliaStorageEntryMetadata md : data.iterateStorageEntries())
+            {
+                gson.toJson(md, JSocialKademliaStorageEntryMetadata.class, writer);
+            }
+            writer.endArray();
 
             writer.endArray();
         }
@@ -86,9 +83,14 @@ public class JsonSocialKademliaDHTSerializer implements KadSerializer<SocialKade
             SocialKademliaDHT dht = gson.fromJson(reader, JSocialKademliaDHT.class);
             dht.initialize();
 
-            /* Now get the entries and add them back to the DHT */
-            List<SocialKademliaStorageEntryMetadata> entries = gson.fromJson(reader, this.storageEntriesCollectionType);
-            dht.putStorageEntries(entries);
+            /* Now get the entries and add them back to the DHT as they're read */
+            reader.beginArray();
+            while (reader.hasNext())
+            {
+                SocialKademliaStorageEntryMetadata md = gson.fromJson(reader, JSocialKademliaStorageEntryMetadata.class);
+                dht.putStorageEntry(md);
+            }
+            reader.endArray();
 
             reader.endArray();
             return dht;
@@ -0,0 +1,68 @@
+package socialkademlia.util.serializer;
+
+import com.google.gson.Gson;
+import kademlia.util.serializer.JsonSerializer;
+import kademlia.util.serializer.KadSerializer;
+
+/**
+ * Shared serializer instances.
+ *
+ * Creating a Gson instance, or a serializer that creates one, throws away the type adapters Gson builds by reflection for every class it sees;
+ * these would otherwise be rebuilt for every message sent and received. Gson and all of these serializers are thread safe,
+ * so one instance of each is shared by every message, serializer and node in this JVM.
+ *
+ * @author Joshua Kissoon
+ * @since 20140620
+ */
+public class Serializers
+{
+
+    private static final Gson gson = new Gson();
+    private static final JsonSerializer<Object> jsonSerializer = new JsonSerializer<>();
+    private static final StorageEntrySerializer storageEntrySerializer = new StorageEntrySerializer(false);
+    private static final StorageEntrySerializer binaryStorageEntrySerializer = new StorageEntrySerializer(true);
+    private static final StorageEntrySerializer storedEntrySerializer = new StorageEntrySerializer(true, StorageEntrySerializer.MAX_STORED_CONTENT_LENGTH);
+
+    private Serializers()
+    {
+    }
+
+    /**
+     * @return The shared Gson instance
+     */
+    public static Gson gson()
+    {
+        return gson;
+    }
+
+    /**
+     * The JsonSerializer writes the class of the object with it, so one instance serializes objects of any class.
+     *
+     * @param <T> The type of the objects to serialize
+     *
+     * @return The shared JsonSerializer
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> KadSerializer<T> json()
+    {
+        return (KadSerializer<T>) jsonSerializer;
+    }
+
+    /**
+     * @param binary Whether the serializer writes entries in binary form rather than the JSON form
+     *
+     * @return The shared storage entry serializer for messages; it reads entries in any form, with content no longer than fits in a message
+     */
+    public static StorageEntrySerializer storageEntry(boolean binary)
+    {
+        return binary ? binaryStorageEntrySerializer : storageEntrySerializer;
+    }
+
+    /**
+     * @return The shared storage entry serializer for the local storage; it writes entries in binary form, and allows longer content than messages
+     */
+    public static StorageEntrySerializer storedEntry()
+    {
+        return storedEntrySerializer;
+    }
+}
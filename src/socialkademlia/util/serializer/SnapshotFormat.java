@@ -0,0 +1,172 @@
+package socialkademlia.util.serializer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The framing of the binary snapshots of a node's state.
+ *
+ * A snapshot is: magic number (int), format version (byte), the body, then the CRC32 of everything before it (int).
+ * The magic number tells what the snapshot holds, and tells a snapshot apart from the JSON state written by older versions;
+ * the checksum catches a snapshot that was cut short or corrupted, rather than loading part of the state.
+ *
+ * @author Joshua Kissoon
+ * @since 20140621
+ */
+public class SnapshotFormat
+{
+
+    public static final byte VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private SnapshotFormat()
+    {
+    }
+
+    /**
+     * A stream the body of a snapshot is written to
+     */
+    public static class Writer extends DataOutputStream
+    {
+
+        private final CheckedOutputStream checked;
+
+        private Writer(CheckedOutputStream checked)
+        {
+            super(checked);
+            this.checked = checked;
+        }
+
+        /**
+         * Write the checksum after the body and close the snapshot
+         *
+         * @throws java.io.IOException
+         */
+        public void finish() throws IOException
+        {
+            int crc = (int) this.checked.getChecksum().getValue();
+            this.writeInt(crc);
+            this.close();
+        }
+    }
+
+    /**
+     * A stream the body of a snapshot is read from
+     */
+    public static class Reader extends DataInputStream
+    {
+
+        private final CheckedInputStream checked;
+
+        private Reader(CheckedInputStream checked)
+        {
+            super(checked);
+            this.checked = checked;
+        }
+
+        /**
+         * Check the checksum after the body and close the snapshot
+         *
+         * @throws java.io.IOException If the checksum doesn't match the snapshot
+         */
+        public void finish() throws IOException
+        {
+            int crc = (int) this.checked.getChecksum().getValue();
+            int expected = this.readInt();
+            this.close();
+
+            if (crc != expected)
+            {
+                throw new IOException("Corrupt snapshot: CRC mismatch");
+            }
+        }
+    }
+
+    /**
+     * Start writing a snapshot
+     *
+     * @param out   The stream to write the snapshot to; it's closed when the snapshot is finished
+     * @param magic The magic number of the kind of snapshot
+     *
+     * @return The stream to write the body of the snapshot to
+     *
+     * @throws java.io.IOException
+     */
+    public static Writer write(OutputStream out, int magic) throws IOException
+    {
+        Writer w = new Writer(new CheckedOutputStream(new BufferedOutputStream(out, BUFFER_SIZE), new CRC32()));
+        w.writeInt(magic);
+        w.writeByte(VERSION);
+        return w;
+    }
+
+    /**
+     * Start reading a snapshot
+     *
+     * @param in    The stream to read the snapshot from; it's closed when the snapshot is finished
+     * @param magic The magic number of the kind of snapshot expected
+     *
+     * @return The stream to read the body of the snapshot from
+     *
+     * @throws java.io.IOException If the stream doesn't hold a snapshot of the expected kind and version
+     */
+    public static Reader read(InputStream in, int magic) throws IOException
+    {
+        Reader r = new Reader(new CheckedInputStream(new BufferedInputStream(in, BUFFER_SIZE), new CRC32()));
+        if (r.readInt() != magic)
+        {
+            throw new IOException("Not a snapshot of the expected kind");
+        }
+
+        int version = r.readUnsignedByte();
+        if (version != VERSION)
+        {
+            throw new IOException("Unknown snapshot format version: " + version);
+        }
+
+        return r;
+    }
+
+    /**
+     * Check whether a stream starts with the given magic number, without consuming anything from it
+     *
+     * @param in    A stream that supports mark and reset
+     * @param magic The magic number
+     *
+     * @return Whether the stream holds a snapshot of this kind
+     *
+     * @throws java.io.IOException
+     */
+    public static boolean isSnapshot(InputStream in, int magic) throws IOException
+    {
+        in.mark(4);
+        try
+        {
+            int value = 0;
+            for (int i = 0; i < 4; i++)
+            {
+                int b = in.read();
+                if (b < 0)
+                {
+                    return false;
+                }
+                value = (value << 8) | b;
+            }
+
+            return value == magic;
+        }
+        finally
+        {
+            in.reset();
+        }
+    }
+}
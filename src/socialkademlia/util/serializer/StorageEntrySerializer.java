@@ -0,0 +1,350 @@
+package socialkademlia.util.serializer;
+
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import kademlia.node.KademliaId;
+import kademlia.util.serializer.KadSerializer;
+import socialkademlia.dht.JSocialKademliaStorageEntry;
+import socialkademlia.dht.JSocialKademliaStorageEntryMetadata;
+import socialkademlia.dht.SocialKademliaStorageEntryMetadata;
+import socialkademlia.util.compression.GzipCodec;
+import socialkademlia.util.compression.NoCompressionCodec;
+
+/**
+ * A KadSerializer for storage entries.
+ *
+ * The binary form writes the content as raw bytes after the metadata:
+ * format version (byte), compression codec id (byte), then
+ * - version 2: metadata length (int), metadata JSON in UTF-8, content length (int), content.
+ * - version 3: the metadata in binary form (see writeMetadata), content length (varint), content.
+ * Version 1 had a compressed flag in place of the codec id, it's values are the ids of no compression and GZIP, so it is read the same way.
+ *
+ * The JSON form is the one the JsonSerializer wrote before the binary form, which nodes that don't know the binary form read:
+ * ["class name", {"content": ..., "metadata": {...}, "isCompressed": ...}], with compressed content Base64 encoded.
+ * Content compressed with a codec other than GZIP has the codec id as well, which those nodes ignore; they can't decompress such content anyway.
+ * It starts with a '[', which is no format version, so the JSON form is read as well, including entries stored by those nodes.
+ *
+ * Every form is read, whichever form this serializer writes. The JSON form is read through a buffer, so it must be the last thing in the stream.
+ * Lengths are read from the network, so content longer than the serializer's maximum is refused before anything is allocated for it.
+ *
+ * This serializer does not close the streams it is given. It has no state, so instances are shared; see Serializers.
+ *
+ * @author Joshua Kissoon
+ * @since 20140615
+ */
+public class StorageEntrySerializer implements KadSerializer<JSocialKademliaStorageEntry>
+{
+
+    public static final byte FORMAT_VERSION = 2;
+    public static final byte BINARY_FORMAT_VERSION = 3;
+
+    /* The first byte of an entry in the JSON form */
+    public static final byte JSON_FORMAT = '[';
+
+    /* Messages are sent in UDP datagrams of at most 64KB, so no content received in a message is longer */
+    public static final int MAX_MESSAGE_CONTENT_LENGTH = 64 * 1024;
+
+    /* Content stored locally isn't limited by the datagram size, but it's still bounded so a corrupt length can't exhaust the heap */
+    public static final int MAX_STORED_CONTENT_LENGTH = 64 * 1024 * 1024;
+
+    /* The longest metadata JSON of version 1 and 2 entries; room for an owner id and type of the longest strings, escaped */
+    private static final int MAX_METADATA_LENGTH = 4 * BinaryFormat.MAX_STRING_LENGTH;
+
+    private static final int FLAG_CACHED = 1;
+    private static final int FLAG_KNODE = 2;
+
+    private final boolean binary;
+    private final int maxContentLength;
+
+    /**
+     * Create a serializer that writes entries in the JSON form, which nodes that don't know the binary form can read
+     */
+    public StorageEntrySerializer()
+    {
+        this(false);
+    }
+
+    /**
+     * @param binary Whether to write entries in binary form
+     */
+    public StorageEntrySerializer(boolean binary)
+    {
+        this(binary, MAX_MESSAGE_CONTENT_LENGTH);
+    }
+
+    /**
+     * @param binary           Whether to write entries in binary form
+     * @param maxContentLength The longest content written or read, in bytes
+     */
+    public StorageEntrySerializer(boolean binary, int maxContentLength)
+    {
+        this.binary = binary;
+        this.maxContentLength = maxContentLength;
+    }
+
+    @Override
+    public void write(JSocialKademliaStorageEntry data, DataOutputStream out) throws IOException
+    {
+        byte[] content = data.getContent();
+        this.checkContentLength(content.length);
+
+        if (this.binary)
+        {
+            out.writeByte(BINARY_FORMAT_VERSION);
+            out.writeByte(data.getCompressionCodec());
+            writeMetadata(data.getContentMetadata(), out);
+            BinaryFormat.writeVarInt(out, content.length);
+            out.write(content);
+            out.flush();
+            return;
+        }
+
+        writeJson(data, out);
+    }
+
+    @Override
+    public JSocialKademliaStorageEntry read(DataInputStream in) throws IOException, ClassNotFoundException
+    {
+        int version = in.readUnsignedByte();
+        if (version == JSON_FORMAT)
+        {
+            return readJson(in);
+        }
+
+        byte codec = in.readByte();
+
+        if (version == BINARY_FORMAT_VERSION)
+        {
+            JSocialKademliaStorageEntryMetadata md = readMetadata(in);
+            byte[] content = new byte[this.checkContentLength(BinaryFormat.readVarInt(in))];
+            in.readFully(content);
+            return new JSocialKademliaStorageEntry(content, md, codec);
+        }
+
+        if (version != FORMAT_VERSION && version != 1)
+        {
+            throw new IOException("Unknown storage entry format version: " + version);
+        }
+
+        byte[] metadata = new byte[checkMetadataLength(in.readInt())];
+        in.readFully(metadata);
+
+        byte[] content = new byte[this.checkContentLength(in.readInt())];
+        in.readFully(content);
+
+        JSocialKademliaStorageEntryMetadata md = Serializers.gson().fromJson(new String(metadata, StandardCharsets.UTF_8), JSocialKademliaStorageEntryMetadata.class);
+        return new JSocialKademliaStorageEntry(content, md, codec);
+    }
+
+    /**
+     * @return The length, if it's a length of content this serializer writes and reads
+     *
+     * @throws java.io.IOException If it's not
+     */
+    private int checkContentLength(int length) throws IOException
+    {
+        if (length < 0 || length > this.maxContentLength)
+        {
+            throw new IOException("Invalid storage entry content length: " + length);
+        }
+
+        return length;
+    }
+
+    /**
+     * @return The length, if it's a valid length of metadata JSON
+     *
+     * @throws java.io.IOException If it's not
+     */
+    private static int checkMetadataLength(int length) throws IOException
+    {
+        if (length < 0 || length > MAX_METADATA_LENGTH)
+        {
+            throw new IOException("Invalid storage entry metadata length: " + length);
+        }
+
+        return length;
+    }
+
+    /**
+     * Read only the metadata of a serialized storage entry, leaving the content unread
+     *
+     * @param in The stream the entry is read from
+     *
+     * @return The metadata of the entry
+     *
+     * @throws java.io.IOException
+     */
+    public static JSocialKademliaStorageEntryMetadata readEntryMetadata(DataInputStream in) throws IOException
+    {
+        int version = in.readUnsignedByte();
+        if (version == JSON_FORMAT)
+        {
+            return (JSocialKademliaStorageEntryMetadata) readJson(in).getContentMetadata();
+        }
+
+        in.readByte();  // the codec
+
+        if (version == BINARY_FORMAT_VERSION)
+        {
+            return readMetadata(in);
+        }
+
+        if (version != FORMAT_VERSION && version != 1)
+        {
+            throw new IOException("Unknown storage entry format version: " + version);
+        }
+
+        byte[] metadata = new byte[checkMetadataLength(in.readInt())];
+        in.readFully(metadata);
+        return Serializers.gson().fromJson(new String(metadata, StandardCharsets.UTF_8), JSocialKademliaStorageEntryMetadata.class);
+    }
+
+    /**
+     * Write an entry in the JSON form
+     */
+    private static void writeJson(JSocialKademliaStorageEntry data, DataOutputStream out) throws IOException
+    {
+        byte[] content = data.getContent();
+        byte codec = data.getCompressionCodec();
+
+        /* GZIP is what the isCompressed flag means; uncompressed content that isn't text is sent Base64 encoded as well */
+        String text = (codec == NoCompressionCodec.ID) ? decodeUtf8(content) : null;
+        boolean encoded = text == null;
+
+        JsonObject json = new JsonObject();
+        json.addProperty("content", encoded ? Base64.getEncoder().encodeToString(content) : text);
+        json.add("metadata", Serializers.gson().toJsonTree(data.getContentMetadata(), JSocialKademliaStorageEntryMetadata.class));
+        json.addProperty("isCompressed", encoded);
+        if (encoded && codec != GzipCodec.ID)
+        {
+            json.addProperty("codec", codec);
+        }
+
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.beginArray();
+        writer.value(JSocialKademliaStorageEntry.class.getName());
+        Serializers.gson().toJson(json, writer);
+        writer.endArray();
+        writer.flush();
+    }
+
+    /**
+     * Read the rest of an entry in the JSON form, the '[' it starts with already read
+     */
+    private static JSocialKademliaStorageEntry readJson(DataInputStream in) throws IOException
+    {
+        SequenceInputStream json = new SequenceInputStream(new ByteArrayInputStream(new byte[]
+        {
+            JSON_FORMAT
+        }), in);
+
+        JsonObject entry;
+        try
+        {
+            JsonReader reader = new JsonReader(new InputStreamReader(json, StandardCharsets.UTF_8));
+            reader.beginArray();
+            reader.nextString();    // the class name
+            entry = Serializers.gson().fromJson(reader, JsonObject.class);
+            reader.endArray();
+        }
+        catch (RuntimeException e)
+        {
+            throw new IOException("Malformed JSON storage entry: " + e.getMessage(), e);
+        }
+
+        if (entry == null || !entry.has("content") || !entry.has("metadata"))
+        {
+            throw new IOException("Malformed JSON storage entry: content or metadata missing");
+        }
+
+        try
+        {
+            JSocialKademliaStorageEntryMetadata md = Serializers.gson().fromJson(entry.get("metadata"), JSocialKademliaStorageEntryMetadata.class);
+            String content = entry.get("content").getAsString();
+
+            if (entry.has("isCompressed") && entry.get("isCompressed").getAsBoolean())
+            {
+                byte codec = entry.has("codec") ? entry.get("codec").getAsByte() : GzipCodec.ID;
+                return new JSocialKademliaStorageEntry(Base64.getDecoder().decode(content), md, codec);
+            }
+
+            return new JSocialKademliaStorageEntry(content.getBytes(StandardCharsets.UTF_8), md, NoCompressionCodec.ID);
+        }
+        catch (RuntimeException e)
+        {
+            throw new IOException("Malformed JSON storage entry: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return The content as text, or null if it's not valid UTF-8 and wouldn't survive being sent as text
+     */
+    private static String decodeUtf8(byte[] content)
+    {
+        try
+        {
+            return StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(content)).toString();
+        }
+        catch (CharacterCodingException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Write metadata in binary form:
+     * key (20 bytes), owner id and type (strings), content hash (int), last updated and last republished timestamps (varints),
+     * flags (byte: 1 = cached, 2 = k-node).
+     *
+     * @param md  The metadata
+     * @param out The stream to write to
+     *
+     * @throws java.io.IOException
+     */
+    public static void writeMetadata(SocialKademliaStorageEntryMetadata md, DataOutputStream out) throws IOException
+    {
+        BinaryFormat.writeKey(out, md.getKey());
+        BinaryFormat.writeString(out, md.getOwnerId());
+        BinaryFormat.writeString(out, md.getType());
+        out.writeInt(md.getContentHash());
+        BinaryFormat.writeVarLong(out, md.getLastUpdatedTimestamp());
+        BinaryFormat.writeVarLong(out, md.lastRepublished());
+        out.writeByte((md.isCached() ? FLAG_CACHED : 0) | (md.isKNode() ? FLAG_KNODE : 0));
+    }
+
+    /**
+     * Read metadata written by writeMetadata
+     *
+     * @param in The stream to read from
+     *
+     * @return The metadata
+     *
+     * @throws java.io.IOException
+     */
+    public static JSocialKademliaStorageEntryMetadata readMetadata(DataInputStream in) throws IOException
+    {
+        KademliaId key = BinaryFormat.readKey(in);
+        String ownerId = BinaryFormat.readString(in);
+        String type = BinaryFormat.readString(in);
+        int contentHash = in.readInt();
+        long updatedTs = BinaryFormat.readVarLong(in);
+        long lastRepublished = BinaryFormat.readVarLong(in);
+        int flags = in.readUnsignedByte();
+
+        return new JSocialKademliaStorageEntryMetadata(key, ownerId, type, contentHash, updatedTs,
+                (flags & FLAG_CACHED) != 0, (flags & FLAG_KNODE) != 0, lastRepublished);
+    }
+}